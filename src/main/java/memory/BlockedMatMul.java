@@ -0,0 +1,146 @@
+package memory;
+
+/**
+ * Cache-blocked matrix multiplication kernel.
+ * The right operand is packed once into panels of NR columns, laid out k-major so the
+ * micro-kernel streams through each panel sequentially. Left rows are processed MR at a
+ * time against every panel, keeping an MR x NR block of the result in registers, and the
+ * shared dimension is split into KC-deep blocks so the working set stays in cache.
+ * A packed kernel is immutable and can be shared by any number of tasks.
+ */
+public class BlockedMatMul {
+
+    public static final int MR = 4;   // left rows per micro-kernel call
+    public static final int NR = 4;   // right columns per packed panel
+    public static final int KC = 256; // depth of a k-block
+
+    private final int depth; // rows of the right operand (the shared dimension)
+    private final int cols;  // columns of the right operand
+    private final int panelCount;
+    private final double[] packed; // packed[(p * depth + k) * NR + c] = right[k][p * NR + c], zero padded
+
+    public BlockedMatMul(double[][] right) {
+        this(MatrixSnapshot.ofRowMajor(right));
+    }
+
+    /**
+     * Packs the right operand straight from a column-major snapshot.
+     */
+    public BlockedMatMul(MatrixSnapshot right) {
+        if (right == null) {
+            throw new IllegalArgumentException("matrix is null");
+        }
+        this.depth = right.rows();
+        this.cols = right.cols();
+        this.panelCount = (cols + NR - 1) / NR;
+        this.packed = new double[panelCount * depth * NR];
+
+        for (int j = 0; j < cols; j++) {
+            double[] column = right.column(j);
+            int base = (j / NR) * depth * NR + j % NR;
+            for (int k = 0; k < depth; k++) {
+                packed[base + k * NR] = column[k];
+            }
+        }
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * Multiplies the given left rows by the packed right operand and returns the product rows.
+     * Every left row must have exactly depth() entries.
+     */
+    public double[][] multiply(double[][] leftRows) {
+        int n = leftRows.length;
+        for (int i = 0; i < n; i++) {
+            if (leftRows[i].length != depth) {
+                throw new IllegalArgumentException(
+                    "Dimension mismatch: vector length=" + leftRows[i].length + " but matrix rows=" + depth
+                );
+            }
+        }
+
+        double[][] out = new double[n][cols];
+        for (int kStart = 0; kStart < depth; kStart += KC) {
+            int kEnd = Math.min(kStart + KC, depth);
+            for (int p = 0; p < panelCount; p++) {
+                int i = 0;
+                for (; i + MR <= n; i += MR) {
+                    kernel4x4(leftRows, out, i, p, kStart, kEnd);
+                }
+                for (; i < n; i++) {
+                    kernel1x4(leftRows[i], out[i], p, kStart, kEnd);
+                }
+            }
+        }
+        return out;
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private void kernel4x4(double[][] a, double[][] out, int row, int p, int kStart, int kEnd) {
+        double[] a0 = a[row];
+        double[] a1 = a[row + 1];
+        double[] a2 = a[row + 2];
+        double[] a3 = a[row + 3];
+
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        int b = (p * depth + kStart) * NR;
+        for (int k = kStart; k < kEnd; k++, b += NR) {
+            double b0 = packed[b];
+            double b1 = packed[b + 1];
+            double b2 = packed[b + 2];
+            double b3 = packed[b + 3];
+
+            double x = a0[k];
+            c00 += x * b0; c01 += x * b1; c02 += x * b2; c03 += x * b3;
+            x = a1[k];
+            c10 += x * b0; c11 += x * b1; c12 += x * b2; c13 += x * b3;
+            x = a2[k];
+            c20 += x * b0; c21 += x * b1; c22 += x * b2; c23 += x * b3;
+            x = a3[k];
+            c30 += x * b0; c31 += x * b1; c32 += x * b2; c33 += x * b3;
+        }
+
+        int col = p * NR;
+        int width = Math.min(NR, cols - col);
+        accumulate(out[row], col, width, c00, c01, c02, c03);
+        accumulate(out[row + 1], col, width, c10, c11, c12, c13);
+        accumulate(out[row + 2], col, width, c20, c21, c22, c23);
+        accumulate(out[row + 3], col, width, c30, c31, c32, c33);
+    }
+
+    private void kernel1x4(double[] a, double[] out, int p, int kStart, int kEnd) {
+        double c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+
+        int b = (p * depth + kStart) * NR;
+        for (int k = kStart; k < kEnd; k++, b += NR) {
+            double x = a[k];
+            c0 += x * packed[b];
+            c1 += x * packed[b + 1];
+            c2 += x * packed[b + 2];
+            c3 += x * packed[b + 3];
+        }
+
+        int col = p * NR;
+        accumulate(out, col, Math.min(NR, cols - col), c0, c1, c2, c3);
+    }
+
+    private static void accumulate(double[] row, int col, int width, double v0, double v1, double v2, double v3) {
+        row[col] += v0;
+        if (width > 1) row[col + 1] += v1;
+        if (width > 2) row[col + 2] += v2;
+        if (width > 3) row[col + 3] += v3;
+    }
+}
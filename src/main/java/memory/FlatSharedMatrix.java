@@ -0,0 +1,290 @@
+package memory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A SharedMatrix that keeps all of its entries in one contiguous block.
+ * Vector i occupies entries [i * vectorLength, (i + 1) * vectorLength) of the block, so a
+ * row-major matrix is stored row after row and a column-major one column after column.
+ * The SharedVectors returned by get() are views into that block; they are created on first
+ * access, so matrices that are only bulk loaded and read never allocate per-vector objects.
+ * Subclasses choose where the block lives by overriding allocate().
+ */
+public class FlatSharedMatrix extends SharedMatrix {
+
+    private volatile Storage storage = new Storage(new HeapBacking(0, 0), 0, 0, VectorOrientation.ROW_MAJOR);
+
+    // Bulk reads hold the read side so that no new view can appear (unlocked) halfway through a copy.
+    private final ReadWriteLock viewsLock = new ReentrantReadWriteLock();
+
+    public FlatSharedMatrix() {
+        super();
+    }
+
+    public FlatSharedMatrix(double[][] matrix) {
+        this(fillRowMajor(new HeapBacking(matrix.length, colsOf(matrix)), matrix), matrix.length, colsOf(matrix));
+    }
+
+    /**
+     * Wraps an existing block holding a rows x cols matrix row after row.
+     */
+    FlatSharedMatrix(Backing backing, int rows, int cols) {
+        super();
+        storage = new Storage(backing, rows, cols, VectorOrientation.ROW_MAJOR);
+    }
+
+    @Override
+    public void loadRowMajor(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = colsOf(matrix);
+        Backing backing = fillRowMajor(allocate(rows, cols), matrix);
+        storage = new Storage(backing, rows, cols, VectorOrientation.ROW_MAJOR);
+    }
+
+    @Override
+    public void loadColumnMajor(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        Backing backing = allocate(cols, rows);
+
+        double[] column = new double[rows];
+        for (int j = 0; j < cols; j++) {
+            for (int i = 0; i < rows; i++) {
+                column[i] = matrix[i][j];
+            }
+            backing.write(j, column);
+        }
+
+        storage = new Storage(backing, cols, rows, VectorOrientation.COLUMN_MAJOR);
+    }
+
+    @Override
+    public double[][] readRowMajor() {
+        Storage s = storage;
+        if (s.vectorCount == 0) {
+            return new double[0][0];
+        }
+
+        lockAllViews(s);
+        try {
+            if (orientationOf(s) == VectorOrientation.ROW_MAJOR) {
+                double[][] result = new double[s.vectorCount][];
+                for (int i = 0; i < s.vectorCount; i++) {
+                    result[i] = s.backing.read(i);
+                }
+                return result;
+            }
+
+            double[][] result = new double[s.vectorLength][s.vectorCount];
+            for (int j = 0; j < s.vectorCount; j++) {
+                double[] column = s.backing.read(j);
+                for (int i = 0; i < column.length; i++) {
+                    result[i][j] = column[i];
+                }
+            }
+            return result;
+        } finally {
+            unlockAllViews(s);
+        }
+    }
+
+    @Override
+    public MatrixSnapshot snapshot() {
+        Storage s = storage;
+        if (s.vectorCount == 0) {
+            return new MatrixSnapshot(new double[0][], 0);
+        }
+
+        lockAllViews(s);
+        try {
+            if (orientationOf(s) == VectorOrientation.COLUMN_MAJOR) {
+                double[][] columns = new double[s.vectorCount][];
+                for (int j = 0; j < s.vectorCount; j++) {
+                    columns[j] = s.backing.read(j);
+                }
+                return new MatrixSnapshot(columns, s.vectorLength);
+            }
+
+            double[][] columns = new double[s.vectorLength][s.vectorCount];
+            for (int i = 0; i < s.vectorCount; i++) {
+                double[] row = s.backing.read(i);
+                for (int j = 0; j < row.length; j++) {
+                    columns[j][i] = row[j];
+                }
+            }
+            return new MatrixSnapshot(columns, s.vectorCount);
+        } finally {
+            unlockAllViews(s);
+        }
+    }
+
+    @Override
+    public SharedVector get(int index) {
+        Storage s = storage;
+        if (index < 0 || index >= s.vectorCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + s.vectorCount);
+        }
+
+        SharedVector view = s.views.get(index);
+        if (view != null) {
+            return view;
+        }
+
+        viewsLock.writeLock().lock();
+        try {
+            s.views.compareAndSet(index, null, s.backing.view(index, s.orientation));
+            return s.views.get(index);
+        } finally {
+            viewsLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int length() {
+        return storage.vectorCount;
+    }
+
+    @Override
+    public int rows() {
+        Storage s = storage;
+        return orientationOf(s) == VectorOrientation.ROW_MAJOR ? s.vectorCount : s.vectorLength;
+    }
+
+    @Override
+    public int cols() {
+        Storage s = storage;
+        return orientationOf(s) == VectorOrientation.ROW_MAJOR ? s.vectorLength : s.vectorCount;
+    }
+
+    @Override
+    public VectorOrientation getOrientation() {
+        return orientationOf(storage);
+    }
+
+    /**
+     * Empties the matrix and hands its block back to the backing's allocator.
+     * Views obtained earlier must not be used afterwards.
+     */
+    @Override
+    public void release() {
+        Storage s = storage;
+        storage = new Storage(new HeapBacking(0, 0), 0, 0, VectorOrientation.ROW_MAJOR);
+        s.backing.release();
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Allocates a block for vectorCount vectors of vectorLength entries each.
+     * The block's initial contents are unspecified; every load overwrites all of it.
+     */
+    Backing allocate(int vectorCount, int vectorLength) {
+        return new HeapBacking(vectorCount, vectorLength);
+    }
+
+    /**
+     * Writes the matrix into a block allocated for it row after row. Static, so constructors
+     * can build their block with it without calling anything a subclass overrides.
+     */
+    static Backing fillRowMajor(Backing backing, double[][] matrix) {
+        for (int i = 0; i < matrix.length; i++) {
+            backing.write(i, matrix[i]);
+        }
+        return backing;
+    }
+
+    static int colsOf(double[][] matrix) {
+        return matrix.length == 0 ? 0 : matrix[0].length;
+    }
+
+    /**
+     * Like the vector-per-row matrix, the orientation of the first vector decides how the
+     * whole matrix is read, so transposing every view transposes the matrix.
+     */
+    private VectorOrientation orientationOf(Storage s) {
+        SharedVector first = s.vectorCount == 0 ? null : s.views.get(0);
+        return first == null ? s.orientation : first.getOrientation();
+    }
+
+    private void lockAllViews(Storage s) {
+        viewsLock.readLock().lock();
+        for (int i = 0; i < s.vectorCount; i++) {
+            SharedVector view = s.views.get(i);
+            if (view != null) {
+                view.readLock();
+            }
+        }
+    }
+
+    private void unlockAllViews(Storage s) {
+        for (int i = s.vectorCount - 1; i >= 0; i--) {
+            SharedVector view = s.views.get(i);
+            if (view != null) {
+                view.readUnlock();
+            }
+        }
+        viewsLock.readLock().unlock();
+    }
+
+    /**
+     * The memory behind a flat matrix, addressed vector by vector.
+     */
+    interface Backing {
+        void write(int vector, double[] values);
+        double[] read(int vector);
+        SharedVector view(int vector, VectorOrientation orientation);
+        void release();
+    }
+
+    /**
+     * A block in a single on-heap double[].
+     */
+    static class HeapBacking implements Backing {
+        private final double[] data;
+        private final int vectorLength;
+
+        HeapBacking(int vectorCount, int vectorLength) {
+            this.data = new double[Math.multiplyExact(vectorCount, vectorLength)];
+            this.vectorLength = vectorLength;
+        }
+
+        public void write(int vector, double[] values) {
+            System.arraycopy(values, 0, data, vector * vectorLength, vectorLength);
+        }
+
+        public double[] read(int vector) {
+            return Arrays.copyOfRange(data, vector * vectorLength, (vector + 1) * vectorLength);
+        }
+
+        public SharedVector view(int vector, VectorOrientation orientation) {
+            return new SharedVector(data, vector * vectorLength, vectorLength, orientation);
+        }
+
+        public void release() {
+            // nothing to do, the garbage collector reclaims the array
+        }
+    }
+
+    /**
+     * Immutable description of the current contents; replaced as a whole on every load.
+     */
+    private static class Storage {
+        final Backing backing;
+        final int vectorCount;  // number of vectors (rows if row-major, columns if column-major)
+        final int vectorLength; // stride between consecutive vectors in the block
+        final VectorOrientation orientation;
+        final AtomicReferenceArray<SharedVector> views;
+
+        Storage(Backing backing, int vectorCount, int vectorLength, VectorOrientation orientation) {
+            this.backing = backing;
+            this.vectorCount = vectorCount;
+            this.vectorLength = vectorLength;
+            this.orientation = orientation;
+            this.views = new AtomicReferenceArray<>(vectorCount);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package memory;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A FlatSharedMatrix whose block is a memory-mapped region of a file, so opening it costs
+ * no parsing and no copying: pages are read from the file only when entries are accessed.
+ * The mapping is read-only; modifying the matrix's vectors throws ReadOnlyBufferException,
+ * while loading new contents replaces the mapping with an ordinary on-heap block.
+ */
+public class MappedSharedMatrix extends FlatSharedMatrix {
+
+    private static final int CHUNK_DOUBLES = 1 << 27; // 1 GiB per mapped region
+
+    private MappedSharedMatrix(Backing backing, int rows, int cols) {
+        super(backing, rows, cols);
+    }
+
+    /**
+     * Maps a rows x cols matrix stored row after row as little-endian doubles,
+     * starting at byte offset of the channel's file.
+     */
+    public static MappedSharedMatrix map(FileChannel channel, long offset, int rows, int cols) throws IOException {
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("Negative matrix shape " + rows + " x " + cols);
+        }
+        return new MappedSharedMatrix(new MappedBacking(channel, offset, rows, cols), rows, cols);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * A block split into mapped regions of whole vectors, each at most CHUNK_DOUBLES long.
+     */
+    private static class MappedBacking implements Backing {
+        private final DoubleBuffer[] chunks;
+        private final int vectorLength;
+        private final int vectorsPerChunk;
+
+        MappedBacking(FileChannel channel, long offset, int vectorCount, int vectorLength) throws IOException {
+            if (vectorLength > CHUNK_DOUBLES) {
+                throw new IllegalArgumentException("Vector of length " + vectorLength + " does not fit in one mapped region");
+            }
+            this.vectorLength = vectorLength;
+            this.vectorsPerChunk = Math.max(1, CHUNK_DOUBLES / Math.max(1, vectorLength));
+
+            int chunkCount = vectorLength == 0 ? 0 : (vectorCount + vectorsPerChunk - 1) / vectorsPerChunk;
+            this.chunks = new DoubleBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                int vectors = Math.min(vectorsPerChunk, vectorCount - c * vectorsPerChunk);
+                long position = offset + (long) c * vectorsPerChunk * vectorLength * Double.BYTES;
+                long size = (long) vectors * vectorLength * Double.BYTES;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        }
+
+        public void write(int vector, double[] values) {
+            chunks[vector / vectorsPerChunk].put(position(vector), values, 0, vectorLength);
+        }
+
+        public double[] read(int vector) {
+            double[] values = new double[vectorLength];
+            if (vectorLength > 0) {
+                chunks[vector / vectorsPerChunk].get(position(vector), values, 0, vectorLength);
+            }
+            return values;
+        }
+
+        public SharedVector view(int vector, VectorOrientation orientation) {
+            if (vectorLength == 0) {
+                return new SharedVector(new double[0], 0, 0, orientation);
+            }
+            return new OffHeapSharedVector(chunks[vector / vectorsPerChunk], position(vector), vectorLength, orientation);
+        }
+
+        public void release() {
+            // the regions are unmapped once the collector reclaims them
+        }
+
+        private int position(int vector) {
+            return (vector % vectorsPerChunk) * vectorLength;
+        }
+    }
+}
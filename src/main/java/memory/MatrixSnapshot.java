@@ -0,0 +1,57 @@
+package memory;
+
+/**
+ * An immutable, column-major copy of a matrix.
+ * A snapshot is taken once (see SharedMatrix.snapshot()) and can then be read by any
+ * number of threads without locking, e.g. as the shared right operand of a multiplication.
+ */
+public class MatrixSnapshot {
+
+    private final int rows;
+    private final int cols;
+    private final double[][] columns; // columns[j][i] is the element at row i, column j
+
+    MatrixSnapshot(double[][] columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        this.cols = columns.length;
+    }
+
+    /**
+     * Builds a snapshot from a row-major 2D array.
+     */
+    public static MatrixSnapshot ofRowMajor(double[][] matrix) {
+        if (matrix == null) {
+            throw new IllegalArgumentException("matrix is null");
+        }
+        return new MatrixSnapshot(SharedMatrix.toColumns(matrix), matrix.length);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public double get(int row, int col) {
+        return columns[col][row];
+    }
+
+    /**
+     * Copies column col into dest, which must have rows() entries.
+     */
+    public void copyColumn(int col, double[] dest) {
+        System.arraycopy(columns[col], 0, dest, 0, rows);
+    }
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Direct access to a column for kernels in this package; callers must not modify it.
+     */
+    double[] column(int col) {
+        return columns[col];
+    }
+}
@@ -0,0 +1,24 @@
+package memory;
+
+/**
+ * Selects how a SharedMatrix keeps its entries.
+ * VECTORS stores one SharedVector (own array, own lock) per row or column.
+ * FLAT stores the whole matrix in one contiguous array with lightweight vector views.
+ * OFF_HEAP uses the FLAT layout in direct buffers outside the Java heap.
+ */
+public enum MatrixStorage {
+    VECTORS,
+    FLAT,
+    OFF_HEAP;
+
+    public SharedMatrix newMatrix() {
+        switch (this) {
+            case FLAT:
+                return new FlatSharedMatrix();
+            case OFF_HEAP:
+                return new OffHeapSharedMatrix();
+            default:
+                return new SharedMatrix();
+        }
+    }
+}
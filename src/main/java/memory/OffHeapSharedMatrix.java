@@ -0,0 +1,109 @@
+package memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FlatSharedMatrix whose block lives outside the Java heap, in direct buffers.
+ * Large intermediate results held this way cost the garbage collector nothing to trace or copy.
+ * A single direct buffer is capped at 2 GiB, so the block is split into chunks of whole vectors.
+ * Calling release() returns the chunks to a process-wide pool, so the next matrix of the same
+ * chunk size reuses the memory at once instead of waiting for the collector.
+ */
+public class OffHeapSharedMatrix extends FlatSharedMatrix {
+
+    private static final int CHUNK_DOUBLES = 1 << 27; // 1 GiB per direct buffer
+    private static final long MAX_POOLED_BYTES = 1L << 32; // keep at most 4 GiB of released chunks
+
+    private static final Map<Integer, Queue<DoubleBuffer>> pool = new ConcurrentHashMap<>();
+    private static final AtomicLong pooledBytes = new AtomicLong(0);
+
+    public OffHeapSharedMatrix() {
+        super();
+    }
+
+    public OffHeapSharedMatrix(double[][] matrix) {
+        super(fillRowMajor(new DirectBacking(matrix.length, colsOf(matrix)), matrix), matrix.length, colsOf(matrix));
+    }
+
+    @Override
+    Backing allocate(int vectorCount, int vectorLength) {
+        return new DirectBacking(vectorCount, vectorLength);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static DoubleBuffer acquireChunk(int doubles) {
+        Queue<DoubleBuffer> free = pool.get(doubles);
+        DoubleBuffer chunk = free == null ? null : free.poll();
+        if (chunk != null) {
+            pooledBytes.addAndGet(-8L * doubles);
+            return chunk;
+        }
+        return ByteBuffer.allocateDirect(doubles * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    private static void releaseChunk(DoubleBuffer chunk) {
+        long bytes = 8L * chunk.capacity();
+        if (pooledBytes.addAndGet(bytes) > MAX_POOLED_BYTES) {
+            pooledBytes.addAndGet(-bytes); // pool is full, let the collector free it
+            return;
+        }
+        pool.computeIfAbsent(chunk.capacity(), k -> new ConcurrentLinkedQueue<>()).add(chunk);
+    }
+
+    /**
+     * A block split into direct-buffer chunks, each holding vectorsPerChunk whole vectors.
+     */
+    private static class DirectBacking implements Backing {
+        private final DoubleBuffer[] chunks;
+        private final int vectorLength;
+        private final int vectorsPerChunk;
+
+        DirectBacking(int vectorCount, int vectorLength) {
+            if (vectorLength > CHUNK_DOUBLES) {
+                throw new IllegalArgumentException("Vector of length " + vectorLength + " does not fit in one off-heap chunk");
+            }
+            this.vectorLength = vectorLength;
+            this.vectorsPerChunk = Math.max(1, CHUNK_DOUBLES / Math.max(1, vectorLength));
+
+            int chunkCount = (vectorCount + vectorsPerChunk - 1) / vectorsPerChunk;
+            this.chunks = new DoubleBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                int vectors = Math.min(vectorsPerChunk, vectorCount - c * vectorsPerChunk);
+                chunks[c] = acquireChunk(vectors * vectorLength);
+            }
+        }
+
+        public void write(int vector, double[] values) {
+            chunks[vector / vectorsPerChunk].put(position(vector), values, 0, vectorLength);
+        }
+
+        public double[] read(int vector) {
+            double[] values = new double[vectorLength];
+            chunks[vector / vectorsPerChunk].get(position(vector), values, 0, vectorLength);
+            return values;
+        }
+
+        public SharedVector view(int vector, VectorOrientation orientation) {
+            return new OffHeapSharedVector(chunks[vector / vectorsPerChunk], position(vector), vectorLength, orientation);
+        }
+
+        public void release() {
+            for (DoubleBuffer chunk : chunks) {
+                releaseChunk(chunk);
+            }
+        }
+
+        private int position(int vector) {
+            return (vector % vectorsPerChunk) * vectorLength;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package memory;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A SharedVector whose entries live in a direct (off-heap) buffer owned by an OffHeapSharedMatrix.
+ * Like every view it can be modified in place but never resized, and it must not be used
+ * after its matrix has been released.
+ */
+public class OffHeapSharedVector extends SharedVector {
+
+    private final DoubleBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    OffHeapSharedVector(DoubleBuffer buffer, int offset, int length, VectorOrientation orientation) {
+        super(null, offset, length, orientation);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public double get(int index) {
+        readLock();
+        try {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+            }
+            return buffer.get(offset + index);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    @Override
+    public void add(SharedVector other) {
+        if (other == null)
+            throw new IllegalArgumentException("other is null");
+        if (this.length() != other.length())
+            throw new IllegalArgumentException("add requires both vectors to have the same length");
+
+        other.readLock();
+        this.writeLock();
+
+        try {
+            if (other instanceof OffHeapSharedVector) {
+                OffHeapSharedVector o = (OffHeapSharedVector) other;
+                for (int i = 0; i < length; i++) {
+                    buffer.put(offset + i, buffer.get(offset + i) + o.buffer.get(o.offset + i));
+                }
+            } else {
+                double[] src = other.copyUnlocked();
+                for (int i = 0; i < length; i++) {
+                    buffer.put(offset + i, buffer.get(offset + i) + src[i]);
+                }
+            }
+        } finally {
+            this.writeUnlock();
+            other.readUnlock();
+        }
+    }
+
+    @Override
+    public void negate() {
+        writeLock();
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                buffer.put(i, -buffer.get(i));
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    public double dot(SharedVector other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other is null");
+        }
+
+        other.readLock();
+        this.readLock();
+
+        try {
+            double[] src = other.copyUnlocked();
+            if (src.length != length) {
+                throw new IllegalArgumentException("Dot product needs both vectors to have the same length");
+            }
+
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                sum += buffer.get(offset + i) * src[i];
+            }
+            return sum;
+        } finally {
+            this.readUnlock();
+            other.readUnlock();
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    @Override
+    double[] copyUnlocked() {
+        double[] values = new double[length];
+        buffer.get(offset, values, 0, length);
+        return values;
+    }
+
+    @Override
+    void writeUnlocked(double[] values) {
+        buffer.put(offset, values, 0, length);
+    }
+}
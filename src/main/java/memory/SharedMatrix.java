@@ -25,27 +25,50 @@ public class SharedMatrix {
 
 
     public void loadColumnMajor(double[][] matrix) {
-       int rows = matrix.length;
+        double[][] columns = toColumns(matrix);
+        SharedVector[] newerVectors = new SharedVector[columns.length];
 
-        // handle an empty matrix
-        if (rows == 0) {
-            vectors = new SharedVector[0];
-            return;
+        for (int j = 0; j < columns.length; j++) {
+            newerVectors[j] = new SharedVector(columns[j], VectorOrientation.COLUMN_MAJOR);
         }
 
-        int collums = matrix[0].length;
-        SharedVector[] newerVectors = new SharedVector[collums];
+        vectors = newerVectors;
 
-        for (int j = 0; j < collums; j++) {
-            double[] col = new double[rows];
-            for (int i = 0; i < rows; i++) {
-                col[i] = matrix[i][j];
-            }
-            newerVectors[j] = new SharedVector(col, VectorOrientation.COLUMN_MAJOR);
+    }
+
+    /**
+     * Takes an immutable column-major snapshot of this matrix.
+     * All vector read locks are held while copying, so the snapshot is consistent,
+     * and readers of the snapshot never need to lock again.
+     */
+    public MatrixSnapshot snapshot() {
+        SharedVector[] vecs_array = vectors;
+        if (vecs_array.length == 0) {
+            return new MatrixSnapshot(new double[0][], 0);
         }
 
-        vectors = newerVectors;
+        acquireAllVectorReadLocks(vecs_array);
+        try {
+            if (vecs_array[0].getOrientation() == VectorOrientation.COLUMN_MAJOR) {
+                double[][] columns = new double[vecs_array.length][];
+                for (int j = 0; j < vecs_array.length; j++) {
+                    columns[j] = vecs_array[j].toArray();
+                }
+                return new MatrixSnapshot(columns, vecs_array[0].length());
+            }
 
+            int rows = vecs_array.length;
+            double[][] columns = new double[vecs_array[0].length()][rows];
+            for (int i = 0; i < rows; i++) {
+                double[] row = vecs_array[i].toArray();
+                for (int j = 0; j < row.length; j++) {
+                    columns[j][i] = row[j];
+                }
+            }
+            return new MatrixSnapshot(columns, rows);
+        } finally {
+            releaseAllVectorReadLocks(vecs_array);
+        }
     }
 
     
@@ -69,21 +92,23 @@ public class SharedMatrix {
             cols = vecs_array.length;
         }
 
-        double[][] result = new double[rows][cols];
+        double[][] result = new double[rows][];
 
         acquireAllVectorReadLocks(vecs_array);
         try {
             if (orientation == VectorOrientation.ROW_MAJOR) {
                 for (int i = 0; i < rows; i++) {
-                    for (int j = 0; j < cols; j++) {
-                        result[i][j] = vecs_array[i].get(j);
-                    }
+                    result[i] = vecs_array[i].toArray();
                 }
             } 
             else { 
+                for (int i = 0; i < rows; i++) {
+                    result[i] = new double[cols];
+                }
                 for (int j = 0; j < cols; j++) {
+                    double[] col = vecs_array[j].toArray();
                     for (int i = 0; i < rows; i++) {
-                        result[i][j] = vecs_array[j].get(i);
+                        result[i][j] = col[i];
                     }
                 }
             }
@@ -103,6 +128,30 @@ public class SharedMatrix {
         return vectors.length;
     }
 
+    public int rows() {
+        SharedVector[] vecs_array = vectors;
+        if (vecs_array.length == 0) {
+            return 0;
+        }
+        return vecs_array[0].getOrientation() == VectorOrientation.ROW_MAJOR ? vecs_array.length : vecs_array[0].length();
+    }
+
+    public int cols() {
+        SharedVector[] vecs_array = vectors;
+        if (vecs_array.length == 0) {
+            return 0;
+        }
+        return vecs_array[0].getOrientation() == VectorOrientation.ROW_MAJOR ? vecs_array[0].length() : vecs_array.length;
+    }
+
+    /**
+     * Empties the matrix and frees whatever memory it holds outside the Java heap.
+     * Backends that live on the heap simply drop their vectors.
+     */
+    public void release() {
+        vectors = new SharedVector[0];
+    }
+
     public VectorOrientation getOrientation() {
         if (vectors.length == 0) {
         return VectorOrientation.ROW_MAJOR; //if it's empty
@@ -110,6 +159,27 @@ public class SharedMatrix {
         return vectors[0].getOrientation();
     }
 
+    /**
+     * Transposes a row-major 2D array into an array of its columns.
+     */
+    static double[][] toColumns(double[][] matrix) {
+        int rows = matrix.length;
+
+        // handle an empty matrix
+        if (rows == 0) {
+            return new double[0][];
+        }
+
+        int collums = matrix[0].length;
+        double[][] columns = new double[collums][rows];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < collums; j++) {
+                columns[j][i] = matrix[i][j];
+            }
+        }
+        return columns;
+    }
+
     private void acquireAllVectorReadLocks(SharedVector[] vecs) {
         for (int i = 0; i < vecs.length; i++) {
         vecs[i].readLock();
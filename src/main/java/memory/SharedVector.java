@@ -5,18 +5,41 @@ import java.util.concurrent.locks.ReadWriteLock;
 public class SharedVector {
 
     private double[] vector;
+    private int offset; // index of this vector's first entry inside the backing array
+    private int length;
+    private final boolean view; // true if the backing array is shared with other vectors
     private VectorOrientation orientation;
     private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
 
     public SharedVector(double[] vector, VectorOrientation orientation) {
         this.vector = vector;
+        this.offset = 0;
+        this.length = vector.length;
+        this.view = false;
+        this.orientation = orientation;
+    }
+
+    /**
+     * Creates a view over entries [offset, offset + length) of a backing array shared
+     * with other vectors, e.g. one row of a FlatSharedMatrix. A view can be modified in
+     * place but never resized. Subclasses whose entries live outside the heap pass a
+     * null backing array and override the element accessors.
+     */
+    SharedVector(double[] backing, int offset, int length, VectorOrientation orientation) {
+        this.vector = backing;
+        this.offset = offset;
+        this.length = length;
+        this.view = true;
         this.orientation = orientation;
     }
 
     public double get(int index) {
         readLock();
         try {
-        return vector[index];
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+            }
+            return vector[offset + index];
         } 
         finally {
             readUnlock();
@@ -26,7 +49,7 @@ public class SharedVector {
     public int length() {
         readLock();
         try {
-            return vector.length;
+            return length;
         } finally {
             readUnlock();
         }
@@ -41,6 +64,37 @@ public class SharedVector {
         }
     }
 
+    /**
+     * Returns a copy of this vector's entries, taken under the read lock.
+     */
+    public double[] toArray() {
+        readLock();
+        try {
+            return copyUnlocked();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Overwrites this vector's entries with the given values.
+     * The values must have the same length as the vector.
+     */
+    public void setValues(double[] values) {
+        if (values == null) {
+            throw new IllegalArgumentException("values is null");
+        }
+        writeLock();
+        try {
+            if (values.length != length) {
+                throw new IllegalArgumentException("setValues requires values of the same length as the vector");
+            }
+            writeUnlocked(values);
+        } finally {
+            writeUnlock();
+        }
+    }
+
     public void writeLock() {
         
         lock.writeLock().lock();
@@ -86,8 +140,14 @@ public class SharedVector {
         this.writeLock();
 
         try {
-            for (int i = 0; i < vector.length; i++) {
-                vector[i] += other.vector[i];
+            double[] src = other.vector;
+            int srcOffset = other.offset;
+            if (src == null) { // off-heap vector, copy it out first
+                src = other.copyUnlocked();
+                srcOffset = 0;
+            }
+            for (int i = 0; i < length; i++) {
+                vector[offset + i] += src[srcOffset + i];
             }
         } finally {
             this.writeUnlock();
@@ -99,7 +159,7 @@ public class SharedVector {
         
         writeLock();
         try {
-            for (int i = 0; i < vector.length; i++) {
+            for (int i = offset; i < offset + length; i++) {
                 vector[i] = -vector[i];
             }
         } finally {
@@ -116,13 +176,20 @@ public class SharedVector {
         this.readLock();
 
         try {
-            if (this.vector.length != other.vector.length) {
+            if (this.length != other.length) {
                 throw new IllegalArgumentException("Dot product needs both vectors to have the same length");
             }
 
+            double[] src = other.vector;
+            int srcOffset = other.offset;
+            if (src == null) { // off-heap vector, copy it out first
+                src = other.copyUnlocked();
+                srcOffset = 0;
+            }
+
             double sum = 0.0;
-            for (int i = 0; i <this.vector.length; i++) {
-                sum += this.vector[i] * other.vector[i];
+            for (int i = 0; i <this.length; i++) {
+                sum += this.vector[this.offset + i] * src[srcOffset + i];
             }
             return sum;
 
@@ -138,45 +205,41 @@ public class SharedVector {
             throw new IllegalArgumentException("matrix is null");
         }
 
+        vecMatMul(matrix.snapshot());
+    }
 
-        if (this.getOrientation() != VectorOrientation.ROW_MAJOR) {
-            throw new IllegalStateException("vecMatMul needs this vector to be a ROW_MAJOR");
+    /**
+     * Multiplies this row vector by an already taken snapshot.
+     * Callers that multiply many rows by the same matrix should take the snapshot
+     * once and share it, instead of letting every row copy the matrix again.
+     */
+    public void vecMatMul(MatrixSnapshot matrix) {
+
+        if (matrix == null) {
+            throw new IllegalArgumentException("matrix is null");
         }
 
-        double[] vectorCopy;
-        readLock();
-        try {
-            vectorCopy = this.vector.clone();
-        } finally {
-            readUnlock();
+
+        if (this.getOrientation() != VectorOrientation.ROW_MAJOR) {
+            throw new IllegalStateException("vecMatMul needs this vector to be a ROW_MAJOR");
         }
 
-        double[][] m = matrix.readRowMajor();
+        double[] vectorCopy = toArray();
 
-        if (m.length != vectorCopy.length) {
+        if (matrix.rows() != vectorCopy.length) {
             throw new IllegalArgumentException(
-                "Dimension mismatch: vector length=" + vectorCopy.length + " but matrix rows=" + m.length
+                "Dimension mismatch: vector length=" + vectorCopy.length + " but matrix rows=" + matrix.rows()
             );
         }
 
-        if (m.length == 0) {
-            writeLock();
-            try {
-                this.vector = new double[0];
-                this.orientation = VectorOrientation.ROW_MAJOR;
-            } finally {
-                writeUnlock();
-            }
-            return;
-        }
-
-        int cols = m[0].length;
+        int cols = matrix.rows() == 0 ? 0 : matrix.cols();
         double[] result = new double[cols];
 
         for (int j = 0; j < cols; j++) {
+            double[] column = matrix.column(j);
             double sum = 0.0;
-            for (int i = 0; i<m.length; i++) {
-                sum += vectorCopy[i] * m[i][j];
+            for (int i = 0; i < column.length; i++) {
+                sum += vectorCopy[i] * column[i];
             }
             result[j] = sum;
         }
@@ -184,11 +247,34 @@ public class SharedVector {
         
         writeLock();
         try {
-            this.vector = result;
+            if (!view) {
+                this.vector = result;
+                this.length = result.length;
+            } else if (result.length == length) {
+                writeUnlocked(result);
+            } else {
+                throw new IllegalStateException("vecMatMul cannot resize a vector that is a view of a shared array");
+            }
             this.orientation = VectorOrientation.ROW_MAJOR;
         } finally {
             writeUnlock();
         }
     }
 
+    // HELPER FUNCTIONS
+
+    /**
+     * Copies the entries out; the caller must hold the read or write lock.
+     */
+    double[] copyUnlocked() {
+        return java.util.Arrays.copyOfRange(vector, offset, offset + length);
+    }
+
+    /**
+     * Overwrites the entries with values of the same length; the caller must hold the write lock.
+     */
+    void writeUnlocked(double[] values) {
+        System.arraycopy(values, 0, vector, offset, length);
+    }
+
 }
@@ -0,0 +1,156 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import memory.MappedSharedMatrix;
+import memory.SharedMatrix;
+import memory.VectorOrientation;
+
+/**
+ * A binary file holding one matrix: a 24-byte header followed by the entries row after row
+ * as raw little-endian doubles. All header fields are little-endian 32-bit integers:
+ *
+ *   magic   "LAEM"
+ *   version 1
+ *   dtype   1 (float64, the only type so far)
+ *   rows
+ *   cols
+ *   padding 0 (keeps the entries 8-byte aligned)
+ *
+ * Files are read and written through memory maps, so loading an operand costs no parsing.
+ */
+public class BinaryMatrixFormat {
+
+    public static final int MAGIC = 0x4D45414C; // "LAEM" read as a little-endian int
+    public static final int VERSION = 1;
+    public static final int DTYPE_FLOAT64 = 1;
+    public static final int HEADER_BYTES = 24;
+
+    private static final int CHUNK_ROWS_BYTES = 1 << 30; // rows written per mapped region, at most 1 GiB
+
+    private BinaryMatrixFormat() {}
+
+    /**
+     * True if the file starts with the binary matrix magic number.
+     */
+    public static boolean isBinaryMatrix(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 4) {
+                return false;
+            }
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(magic, 0);
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Maps the matrix in the file. The returned matrix reads the file lazily and stays
+     * valid after the channel used to map it is closed.
+     */
+    public static SharedMatrix read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int[] shape = readHeader(channel, path);
+            return MappedSharedMatrix.map(channel, HEADER_BYTES, shape[0], shape[1]);
+        }
+    }
+
+    /**
+     * Returns {rows, cols} from the file's header without mapping its entries.
+     */
+    public static int[] readShape(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel, path);
+        }
+    }
+
+    public static void write(double[][] matrix, Path path) throws IOException {
+        write(new RowSource() {
+            public int rows() { return matrix.length; }
+            public int cols() { return matrix.length == 0 ? 0 : matrix[0].length; }
+            public double[] row(int i) { return matrix[i]; }
+        }, path);
+    }
+
+    /**
+     * Writes the matrix straight out of its SharedMatrix, one row at a time when it is row-major.
+     */
+    public static void write(SharedMatrix matrix, Path path) throws IOException {
+        if (matrix.getOrientation() != VectorOrientation.ROW_MAJOR) {
+            write(matrix.readRowMajor(), path);
+            return;
+        }
+        write(new RowSource() {
+            public int rows() { return matrix.rows(); }
+            public int cols() { return matrix.cols(); }
+            public double[] row(int i) { return matrix.get(i).toArray(); }
+        }, path);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static int[] readHeader(FileChannel channel, Path path) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            throw new IOException("Not a binary matrix file: " + path);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary matrix file: " + path);
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary matrix version " + header.getInt(4) + ": " + path);
+        }
+        if (header.getInt(8) != DTYPE_FLOAT64) {
+            throw new IOException("Unsupported binary matrix dtype " + header.getInt(8) + ": " + path);
+        }
+        int rows = header.getInt(12);
+        int cols = header.getInt(16);
+        if (rows < 0 || cols < 0 || channel.size() != HEADER_BYTES + (long) rows * cols * Double.BYTES) {
+            throw new IOException("Binary matrix size does not match its " + rows + " x " + cols + " header: " + path);
+        }
+        return new int[]{rows, cols};
+    }
+
+    private interface RowSource {
+        int rows();
+        int cols();
+        double[] row(int i);
+    }
+
+    private static void write(RowSource source, Path path) throws IOException {
+        int rows = source.rows();
+        int cols = source.cols();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(DTYPE_FLOAT64).putInt(rows).putInt(cols).putInt(0);
+            header.flip();
+            channel.write(header, 0);
+
+            long rowBytes = (long) cols * Double.BYTES;
+            if (rowBytes == 0) {
+                return;
+            }
+            int rowsPerChunk = (int) Math.max(1, CHUNK_ROWS_BYTES / rowBytes);
+            for (int first = 0; first < rows; first += rowsPerChunk) {
+                int count = Math.min(rowsPerChunk, rows - first);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + first * rowBytes, count * rowBytes);
+                DoubleBuffer doubles = region.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                for (int i = first; i < first + count; i++) {
+                    doubles.put(source.row(i), 0, cols);
+                }
+            }
+        }
+    }
+}
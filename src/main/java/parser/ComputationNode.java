@@ -1,12 +1,20 @@
 package parser;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
 import java.util.List;
 
+import memory.SharedMatrix;
+
 public class ComputationNode {
 
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private SharedMatrix result = null; // MATRIX nodes resolved by the engine may hold their matrix here instead
+    private Path source = null; // MATRIX nodes referring to an operand file that has not been loaded yet
+    private int[] sourceShape = null; // shape of a binary source, read from its header
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -38,6 +46,24 @@ public class ComputationNode {
         this.matrix = matrix;
     }
 
+    /**
+     * Creates a MATRIX node for an operand stored in a file, either a JSON matrix or a
+     * BinaryMatrixFormat file. Nothing is read until the matrix or its shape is first needed;
+     * the shape of a binary file comes from its header alone.
+     */
+    public ComputationNode(Path source) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.source = source;
+    }
+
+    /**
+     * Creates a MATRIX node holding its matrix in a SharedMatrix, e.g. one mapped from a file.
+     */
+    public ComputationNode(SharedMatrix matrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.result = matrix;
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
@@ -46,6 +72,10 @@ public class ComputationNode {
         return children;
     }
 
+    void setChildren(List<ComputationNode> children) {
+        this.children = children;
+    }
+
     /**
      * Recursively finds the first resolvable node in the tree.
      * A resolvable node is defined as a node that is not of type MATRIX,
@@ -81,6 +111,113 @@ public class ComputationNode {
         }
     }
 
+    /**
+     * Like associativeNesting(), but an n-ary MULTIPLY is nested in the order that needs the
+     * fewest scalar multiplications given its operands' shapes (the classic matrix-chain
+     * dynamic program). For example, with A: 1000x10, B: 10x1000, C: 1000x10 this builds
+     * A * (B * C) instead of (A * B) * C. Other operators are nested left-associatively, as
+     * are chains whose shapes do not line up or are not known yet (a malformed operand, or a
+     * JSON operand file not read yet), so errors are still reported when computed.
+     */
+    public void chainNesting() {
+        if (nodeType != ComputationNodeType.MULTIPLY || children == null || children.size() <= 2) {
+            associativeNesting();
+            return;
+        }
+
+        int n = children.size();
+        long[] dims = new long[n + 1]; // operand i is dims[i] x dims[i + 1]
+        for (int i = 0; i < n; i++) {
+            int[] shape = children.get(i).shapeWithoutLoading();
+            if (shape == null || (i > 0 && shape[0] != dims[i])) {
+                associativeNesting();
+                return;
+            }
+            dims[i] = shape[0];
+            dims[i + 1] = shape[1];
+        }
+
+        // cost[i][j] = cheapest way to multiply operands i..j, split[i][j] = where its last product splits
+        long[][] cost = new long[n][n];
+        int[][] split = new int[n][n];
+        for (int length = 2; length <= n; length++) {
+            for (int i = 0; i + length - 1 < n; i++) {
+                int j = i + length - 1;
+                cost[i][j] = Long.MAX_VALUE;
+                for (int k = i; k < j; k++) {
+                    long c = cost[i][k] + cost[k + 1][j] + dims[i] * dims[k + 1] * dims[j + 1];
+                    if (c < cost[i][j]) {
+                        cost[i][j] = c;
+                        split[i][j] = k;
+                    }
+                }
+            }
+        }
+
+        int k = split[0][n - 1];
+        children = List.of(buildChain(0, k, split), buildChain(k + 1, n - 1, split));
+    }
+
+    private ComputationNode buildChain(int from, int to, int[][] split) {
+        if (from == to) {
+            return children.get(from);
+        }
+        int k = split[from][to];
+        return new ComputationNode(ComputationNodeType.MULTIPLY,
+            List.of(buildChain(from, k, split), buildChain(k + 1, to, split)));
+    }
+
+    /**
+     * Returns {rows, cols} of the matrix this node evaluates to, without computing it.
+     * Operand shapes are not validated here; mismatches surface when the node is computed.
+     */
+    public int[] inferShape() {
+        switch (nodeType) {
+            case MATRIX:
+                return new int[]{getRows(), getCols()};
+            case MULTIPLY:
+                return new int[]{children.get(0).inferShape()[0], children.get(children.size() - 1).inferShape()[1]};
+            case TRANSPOSE:
+                int[] shape = children.get(0).inferShape();
+                return new int[]{shape[1], shape[0]};
+            default: // ADD, NEGATE
+                return children.get(0).inferShape();
+        }
+    }
+
+    /**
+     * Like inferShape(), but returns null instead of failing on a malformed subtree (a unary
+     * operator without exactly one operand, or another operator without any) and instead of
+     * loading a JSON operand file, whose shape is only known once it is read.
+     */
+    private int[] shapeWithoutLoading() {
+        if (nodeType == ComputationNodeType.MATRIX) {
+            if (source != null && binarySourceShape() == null) {
+                return null;
+            }
+            return new int[]{getRows(), getCols()};
+        }
+        boolean unary = nodeType == ComputationNodeType.NEGATE || nodeType == ComputationNodeType.TRANSPOSE;
+        if (children == null || children.isEmpty() || (unary && children.size() != 1)) {
+            return null;
+        }
+        int[][] shapes = new int[children.size()][];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = children.get(i).shapeWithoutLoading();
+            if (shapes[i] == null) {
+                return null;
+            }
+        }
+        switch (nodeType) {
+            case MULTIPLY:
+                return new int[]{shapes[0][0], shapes[shapes.length - 1][1]};
+            case TRANSPOSE:
+                return new int[]{shapes[0][1], shapes[0][0]};
+            default: // ADD, NEGATE
+                return shapes[0];
+        }
+    }
+
     /**
      * Resolves this node by setting its type to MATRIX and storing the computed matrix.
      */
@@ -88,14 +225,136 @@ public class ComputationNode {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
         this.matrix = matrix;
+        this.result = null;
+        this.source = null;
     }
 
+    /**
+     * Resolves this node with a matrix that stays in its SharedMatrix (possibly off-heap)
+     * until someone asks for it as a 2D array. The node takes ownership of the matrix.
+     */
+    public void resolve(SharedMatrix result) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.matrix = null;
+        this.result = result;
+        this.source = null;
+    }
+
+    /**
+     * Returns the matrix as a 2D array. For a node resolved with a SharedMatrix this is
+     * a fresh copy on every call.
+     */
     public double[][] getMatrix() {
+        load();
+        if (result != null) {
+            return result.readRowMajor();
+        }
         if (matrix == null) {
             throw new IllegalStateException("This node does not contain a matrix.");
         }
         return matrix;
     }
 
+    /**
+     * Returns the SharedMatrix this node was resolved with, or null if it holds a plain 2D array.
+     */
+    public SharedMatrix getSharedMatrix() {
+        load();
+        return result;
+    }
+
+    /**
+     * Returns the operand file of a MATRIX node that has not been loaded yet, or null.
+     */
+    public Path getSource() {
+        return source;
+    }
+
+    public int getRows() {
+        if (source != null && binarySourceShape() != null) {
+            return sourceShape[0];
+        }
+        if (getSharedMatrix() != null) {
+            return result.rows();
+        }
+        return getMatrix().length;
+    }
+
+    public int getCols() {
+        if (source != null && binarySourceShape() != null) {
+            return sourceShape[1];
+        }
+        if (getSharedMatrix() != null) {
+            return result.cols();
+        }
+        double[][] m = getMatrix();
+        return m.length == 0 ? 0 : m[0].length;
+    }
+
+    /**
+     * Hands this node's SharedMatrix over to the caller, leaving the node without a matrix.
+     */
+    public SharedMatrix detachSharedMatrix() {
+        load();
+        SharedMatrix detached = result;
+        result = null;
+        return detached;
+    }
+
+    /**
+     * Frees this node's matrix once its last consumer is done with it.
+     * Afterwards the node no longer contains a matrix.
+     */
+    public void release() {
+        if (result != null) {
+            result.release();
+        }
+        result = null;
+        matrix = null;
+        source = null;
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Reads the operand file, if this node refers to one that has not been loaded yet.
+     */
+    private void load() {
+        if (source == null) {
+            return;
+        }
+        ComputationNode loaded;
+        try {
+            loaded = new InputParser().parse(source.toString());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Failed to load operand " + source + ": " + e.getMessage());
+        }
+        if (loaded.getNodeType() != ComputationNodeType.MATRIX) {
+            throw new IllegalArgumentException("Operand file " + source + " does not hold a single matrix");
+        }
+        if (loaded.source != null) {
+            throw new IllegalArgumentException("Operand file " + source + " refers to another file");
+        }
+        matrix = loaded.matrix;
+        result = loaded.result;
+        source = null;
+    }
+
+    private int[] binarySourceShape() {
+        if (sourceShape == null) {
+            try {
+                if (BinaryMatrixFormat.isBinaryMatrix(source)) {
+                    sourceShape = BinaryMatrixFormat.readShape(source);
+                } else {
+                    sourceShape = new int[0]; // JSON, only known once loaded
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to load operand " + source + ": " + e.getMessage());
+            }
+        }
+        return sourceShape.length == 0 ? null : sourceShape;
+    }
 
 }
\ No newline at end of file
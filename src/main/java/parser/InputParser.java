@@ -1,68 +1,298 @@
 package parser;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
 
+/**
+ * Reads the computation tree with Jackson's streaming token API. Numbers go straight into
+ * the row arrays of their matrix, so no JsonNode tree of the whole input is ever built and
+ * parsing needs little more memory than the resulting matrices.
+ * An operand may also be given as {"file": "path"}, naming a JSON matrix or a
+ * BinaryMatrixFormat file relative to the input file; it is only read when first needed.
+ */
 public class InputParser {
 
     private final ObjectMapper mapper = new ObjectMapper();
 
+    // matrices already parsed from the current file, so a repeated operand is stored once
+    private final Map<MatrixContent, ComputationNode> parsedMatrices = new HashMap<>();
+    // operand files referenced so far, so every file gets one node
+    private final Map<Path, ComputationNode> referencedFiles = new HashMap<>();
+    // directory that relative operand paths are resolved against, null if operand files are not allowed
+    private Path baseDirectory;
+
+    /**
+     * Parses a JSON computation tree. A file in BinaryMatrixFormat is read as a single matrix,
+     * memory-mapped instead of parsed.
+     */
     public ComputationNode parse(String inputPath) throws ParseException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        ComputationNode root = null;
         try {
-            File inputFile = new File(inputPath);
-            JsonNode rootJsonNode = mapper.readTree(inputFile);
-            ComputationNode root = parseJsonNode(rootJsonNode);
+            root = parseFile(inputPath);
+            return root;
+        } finally {
+            commit(event, inputPath, root);
+        }
+    }
+
+    /**
+     * Parses a JSON computation tree from a stream, e.g. a job received over the network.
+     * Operand files are resolved against baseDirectory; with a null baseDirectory they are
+     * rejected, so an untrusted input cannot name files to read. The stream is closed afterwards.
+     */
+    public ComputationNode parse(InputStream input, Path baseDirectory) throws ParseException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        ComputationNode root = null;
+        try (JsonParser parser = mapper.createParser(input)) {
+            root = parseTree(parser, baseDirectory == null ? null : baseDirectory.toAbsolutePath());
             return root;
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input JSON: " + e.getMessage(), 0);
+        } finally {
+            commit(event, "stream", root);
+        }
+    }
+
+    private ComputationNode parseFile(String inputPath) throws ParseException {
+        boolean binary;
+        try {
+            binary = BinaryMatrixFormat.isBinaryMatrix(Path.of(inputPath));
+        } catch (IOException e) {
+            binary = false; // reported below, like any unreadable JSON file
+        }
+        if (binary) {
+            try {
+                return new ComputationNode(BinaryMatrixFormat.read(Path.of(inputPath)));
+            } catch (IOException e) {
+                throw new ParseException("Failed to read the input file: " + e.getMessage(), 0);
+            }
+        }
+
+        try (JsonParser parser = mapper.createParser(new File(inputPath))) {
+            return parseTree(parser, Path.of(inputPath).toAbsolutePath().getParent());
         } catch (IOException e) {
             throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
         }
     }
 
-    private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
-        if (jsonNode.has("operator") && jsonNode.has("operands")) {
-            String operatorStr = jsonNode.get("operator").asText();
-            ArrayNode operandJsonNodes = (ArrayNode) jsonNode.get("operands");
-            List<ComputationNode> operands = new ArrayList<>();
-            for (int i = 0; i < operandJsonNodes.size(); i++) {
-                operands.add(parseJsonNode(operandJsonNodes.get(i)));
+    private ComputationNode parseTree(JsonParser parser, Path base) throws ParseException, IOException {
+        parsedMatrices.clear();
+        referencedFiles.clear();
+        baseDirectory = base;
+        try {
+            if (parser.nextToken() == null) {
+                throw new ParseException("Invalid node structure: ", 0);
             }
-            return new ComputationNode(operatorStr, operands);
+            ComputationNode root = parseNode(parser);
+            return root;
+        } finally {
+            parsedMatrices.clear();
+            referencedFiles.clear();
         }
-        else if (jsonNode.isArray()) {
-            if (jsonNode.size() == 0) {
+    }
+
+    /**
+     * Parses the value starting at the parser's current token and leaves the parser on its last token.
+     */
+    private ComputationNode parseNode(JsonParser parser) throws ParseException, IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            return parseOperatorNode(parser);
+        }
+        else if (parser.currentToken() == JsonToken.START_ARRAY) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.END_ARRAY) {
                 throw new ParseException("Empty array cannot be parsed as DataNode.", 0);
             }
             // Check if it's a vector (1D array)
-            if (jsonNode.get(0).isNumber()) {
+            if (first.isNumeric()) {
                 throw new ParseException("Vectors (1D arrays) are not supported as standalone nodes.", 0);
             }
             // Otherwise, it's a matrix (2D array)
+            return parseMatrix(parser);
+        }
+        else {
+            JsonNode value = parser.readValueAsTree();
+            throw new ParseException("Invalid node structure: " + value.toString(), 0);
+        }
+    }
+
+    private ComputationNode parseOperatorNode(JsonParser parser) throws ParseException, IOException {
+        String operatorStr = null;
+        List<ComputationNode> operands = null;
+        String file = null;
+        String start = "line " + parser.currentTokenLocation().getLineNr()
+            + ", column " + parser.currentTokenLocation().getColumnNr();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("operator")) {
+                JsonNode value = parser.readValueAsTree();
+                operatorStr = value.asText();
+            }
+            else if (field.equals("file")) {
+                JsonNode value = parser.readValueAsTree();
+                file = value.asText();
+            }
+            else if (field.equals("operands")) {
+                if (parser.currentToken() != JsonToken.START_ARRAY) {
+                    throw new ParseException("Operands must be an array, found: " + parser.readValueAsTree().toString(), 0);
+                }
+                operands = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    operands.add(parseNode(parser));
+                }
+            }
             else {
-                double[][] matrix = new double[jsonNode.size()][];
-                int width = jsonNode.get(0).size();
-                for (int i = 0; i < jsonNode.size(); i++) {
-                    JsonNode rowJsonNode = jsonNode.get(i);
-                    if (rowJsonNode.size() != width) {
+                parser.skipChildren();
+            }
+        }
+
+        if (file != null && operatorStr == null && operands == null) {
+            if (baseDirectory == null) {
+                throw new ParseException("Operand files are not allowed in this input, found one at " + start, 0);
+            }
+            Path path = baseDirectory.resolve(file).normalize();
+            return referencedFiles.computeIfAbsent(path, ComputationNode::new);
+        }
+        if (operatorStr == null || operands == null) {
+            throw new ParseException("Invalid node structure: object without \"operator\" and \"operands\" at " + start, 0);
+        }
+        return new ComputationNode(operatorStr, operands);
+    }
+
+    /**
+     * Reads the rows of a matrix; the parser is on the first row's token. The first row is
+     * grown as it is read, every later row is allocated at the first row's width up front.
+     */
+    private ComputationNode parseMatrix(JsonParser parser) throws ParseException, IOException {
+        List<double[]> rows = new ArrayList<>();
+        int width = -1;
+
+        do {
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                // same checks, in the same order, as for any other row
+                JsonNode rowJsonNode = parser.readValueAsTree();
+                if (width == -1) {
+                    width = rowJsonNode.size();
+                }
+                if (rowJsonNode.size() != width) {
+                    throw new ParseException("Inconsistent row sizes in matrix.", 0);
+                }
+                throw new ParseException("Invalid matrix row: " + rowJsonNode.toString(), 0);
+            }
+
+            double[] row;
+            if (width == -1) {
+                row = readFirstRow(parser);
+                width = row.length;
+            } else {
+                row = new double[width];
+                int j = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (j == width) {
                         throw new ParseException("Inconsistent row sizes in matrix.", 0);
                     }
-                    if (!rowJsonNode.isArray()) {
-                        throw new ParseException("Invalid matrix row: " + rowJsonNode.toString(), 0);
-                    }
-                    matrix[i] = new double[rowJsonNode.size()];
-                    for (int j = 0; j < rowJsonNode.size(); j++) {
-                        matrix[i][j] = rowJsonNode.get(j).asDouble();
-                    }
+                    row[j++] = readDouble(parser);
                 }
-                return new ComputationNode(matrix);
+                if (j != width) {
+                    throw new ParseException("Inconsistent row sizes in matrix.", 0);
+                }
+            }
+            rows.add(row);
+        } while (parser.nextToken() != JsonToken.END_ARRAY);
+
+        double[][] matrix = rows.toArray(new double[0][]);
+        MatrixContent content = new MatrixContent(matrix);
+        ComputationNode known = parsedMatrices.get(content);
+        if (known != null) {
+            return known;
+        }
+        ComputationNode leaf = new ComputationNode(matrix);
+        parsedMatrices.put(content, leaf);
+        return leaf;
+    }
+
+    private double[] readFirstRow(JsonParser parser) throws IOException {
+        double[] row = new double[16];
+        int length = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (length == row.length) {
+                row = Arrays.copyOf(row, row.length * 2);
+            }
+            row[length++] = readDouble(parser);
+        }
+        return Arrays.copyOf(row, length);
+    }
+
+    /**
+     * Reads one matrix entry the way JsonNode.asDouble() would: numbers as they are,
+     * numeric strings parsed, true as 1, and anything else as 0.
+     */
+    private double readDouble(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return 1.0;
+            case VALUE_STRING:
+                return parser.getValueAsDouble(0.0);
+            case START_ARRAY:
+            case START_OBJECT:
+                parser.skipChildren();
+                return 0.0;
+            default:
+                return 0.0;
+        }
+    }
+
+    private static void commit(ParseEvent event, String source, ComputationNode root) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.nodeType = root == null ? "" : root.getNodeType().name();
+            // only a matrix already in memory; an operand file is not loaded just for the event
+            if (root != null && root.getNodeType() == ComputationNodeType.MATRIX && root.getSource() == null) {
+                event.rows = root.getRows();
+                event.cols = root.getCols();
             }
+            event.commit();
         }
-        else { throw new ParseException("Invalid node structure: " + jsonNode.toString(), 0); }
     }
 
-}
\ No newline at end of file
+    /**
+     * A parsed matrix compared by content.
+     */
+    private static class MatrixContent {
+        private final double[][] matrix;
+        private final int hash;
+
+        MatrixContent(double[][] matrix) {
+            this.matrix = matrix;
+            this.hash = Arrays.deepHashCode(matrix);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MatrixContent && Arrays.deepEquals(matrix, ((MatrixContent) o).matrix);
+        }
+    }
+}
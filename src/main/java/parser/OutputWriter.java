@@ -2,9 +2,21 @@ package parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
+import memory.SharedMatrix;
+import memory.VectorOrientation;
+
+/**
+ * Writes results as {"result": [[...], ...]} or {"error": "..."}.
+ * Matrices are streamed row by row through a JsonGenerator, so the output never exists as a
+ * whole in memory. The default layout is pretty-printed; compact mode drops all whitespace.
+ */
 public class OutputWriter {
 
     private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
@@ -22,13 +34,132 @@ public class OutputWriter {
     public OutputWriter() {}
 
     public static void write(double[][] matrix, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ResultMatrix(matrix));
+        write(matrix, filePath, false);
+    }
+
+    public static void write(double[][] matrix, String filePath, boolean compact) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        write(matrix, createGenerator(filePath, compact));
+        commit(event, filePath, compact ? "compact json" : "json", matrix.length, matrix.length == 0 ? 0 : matrix[0].length);
+    }
+
+    /**
+     * Streams the matrix to out, which is closed afterwards.
+     */
+    public static void write(double[][] matrix, OutputStream out, boolean compact) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        write(matrix, createGenerator(out, compact));
+        commit(event, "stream", compact ? "compact json" : "json", matrix.length, matrix.length == 0 ? 0 : matrix[0].length);
+    }
+
+    private static void write(double[][] matrix, JsonGenerator output) throws IOException {
+        try (JsonGenerator generator = output) {
+            generator.writeStartObject();
+            generator.writeFieldName("result");
+            generator.writeStartArray();
+            for (double[] row : matrix) {
+                generator.writeArray(row, 0, row.length);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Streams the matrix straight out of its SharedMatrix. A row-major matrix is copied out
+     * one row at a time, just before that row is written.
+     */
+    public static void write(SharedMatrix matrix, String filePath, boolean compact) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        write(matrix, createGenerator(filePath, compact));
+        commit(event, filePath, compact ? "compact json" : "json", matrix.rows(), matrix.cols());
+    }
+
+    /**
+     * Streams the matrix to out, which is closed afterwards.
+     */
+    public static void write(SharedMatrix matrix, OutputStream out, boolean compact) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        write(matrix, createGenerator(out, compact));
+        commit(event, "stream", compact ? "compact json" : "json", matrix.rows(), matrix.cols());
+    }
+
+    private static void write(SharedMatrix matrix, JsonGenerator output) throws IOException {
+        if (matrix.getOrientation() != VectorOrientation.ROW_MAJOR) {
+            write(matrix.readRowMajor(), output);
+            return;
+        }
+        try (JsonGenerator generator = output) {
+            generator.writeStartObject();
+            generator.writeFieldName("result");
+            generator.writeStartArray();
+            for (int i = 0; i < matrix.length(); i++) {
+                double[] row = matrix.get(i).toArray();
+                generator.writeArray(row, 0, row.length);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the matrix in BinaryMatrixFormat instead of JSON.
+     */
+    public static void writeBinary(SharedMatrix matrix, String filePath) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        BinaryMatrixFormat.write(matrix, Path.of(filePath));
+        commit(event, filePath, "binary", matrix.rows(), matrix.cols());
+    }
+
+    public static void writeBinary(double[][] matrix, String filePath) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        BinaryMatrixFormat.write(matrix, Path.of(filePath));
+        commit(event, filePath, "binary", matrix.length, matrix.length == 0 ? 0 : matrix[0].length);
     }
 
     public static void write(String error, String filePath) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
         File file = new File(filePath);
         mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ErrorMessage(error));
+        commit(event, filePath, "error", 0, 0);
+    }
+
+    public static void write(String error, OutputStream out) throws IOException {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        mapper.writerWithDefaultPrettyPrinter().writeValue(out, new ErrorMessage(error));
+        commit(event, "stream", "error", 0, 0);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static void commit(WriteEvent event, String target, String format, int rows, int cols) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = target;
+            event.format = format;
+            event.rows = rows;
+            event.cols = cols;
+            event.commit();
+        }
+    }
+
+    private static JsonGenerator createGenerator(String filePath, boolean compact) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(new File(filePath), JsonEncoding.UTF8);
+        return compact ? generator : generator.useDefaultPrettyPrinter();
+    }
+
+    private static JsonGenerator createGenerator(OutputStream out, boolean compact) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        return compact ? generator : generator.useDefaultPrettyPrinter();
     }
 
 }
@@ -0,0 +1,32 @@
+package parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one InputParser.parse call.
+ */
+@Name("parser.Parse")
+@Label("Parse Input")
+@Category({"Linear Algebra Engine", "I/O"})
+@Description("Parsing a computation tree")
+public class ParseEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Node Type")
+    @Description("Type of the root node, empty if parsing failed")
+    String nodeType;
+
+    @Label("Rows")
+    @Description("Rows of the input if it is a single matrix")
+    int rows;
+
+    @Label("Columns")
+    @Description("Columns of the input if it is a single matrix")
+    int cols;
+}
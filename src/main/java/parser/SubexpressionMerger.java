@@ -0,0 +1,146 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges identical subtrees of a computation tree into one shared node (hash-consing).
+ * Leaf matrices are compared by content and operator nodes by operator and operands, so
+ * after merging every distinct subexpression appears once and the tree becomes a DAG.
+ * The engine computes a shared node once and keeps its result until its last parent is done.
+ */
+public class SubexpressionMerger {
+
+    // canonical node for every distinct subexpression seen so far
+    private final Map<Key, ComputationNode> canonical = new HashMap<>();
+    // nodes already visited, mapped to their canonical node
+    private final Map<ComputationNode, ComputationNode> visited = new IdentityHashMap<>();
+    private int merged = 0;
+
+    /**
+     * Merges duplicates below root and returns the root's canonical node.
+     */
+    public ComputationNode merge(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("Computation root is null");
+        }
+        canonical.clear();
+        visited.clear();
+        merged = 0;
+        return canonicalize(root);
+    }
+
+    /**
+     * Returns how many nodes the last merge() replaced by an identical one.
+     */
+    public int getMergedCount() {
+        return merged;
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private ComputationNode canonicalize(ComputationNode node) {
+        ComputationNode known = visited.get(node);
+        if (known != null) {
+            return known;
+        }
+
+        Key key;
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            key = new Key(node);
+        } else {
+            List<ComputationNode> children = new ArrayList<>();
+            for (ComputationNode child : node.getChildren()) {
+                children.add(canonicalize(child));
+            }
+            node.setChildren(children);
+            key = new Key(node.getNodeType(), children);
+        }
+
+        ComputationNode result = canonical.putIfAbsent(key, node);
+        if (result == null) {
+            result = node;
+        } else {
+            merged++;
+        }
+        visited.put(node, result);
+        return result;
+    }
+
+    /**
+     * Identifies a subexpression. Operands are compared by identity, which is enough because
+     * they have already been replaced by their canonical nodes. Leaves holding a plain array
+     * are compared by content, leaves referring to an operand file by path; leaves the engine
+     * has already resolved only match themselves.
+     */
+    private static class Key {
+        private final ComputationNodeType type;
+        private final List<ComputationNode> operands;
+        private final double[][] matrix;
+        private final ComputationNode resolvedLeaf;
+        private final java.nio.file.Path source;
+        private final int hash;
+
+        Key(ComputationNodeType type, List<ComputationNode> operands) {
+            this.type = type;
+            this.operands = operands;
+            this.matrix = null;
+            this.resolvedLeaf = null;
+            this.source = null;
+            this.hash = type.hashCode() * 31 + operands.hashCode();
+        }
+
+        Key(ComputationNode leaf) {
+            this.type = ComputationNodeType.MATRIX;
+            this.operands = null;
+            if (leaf.getSource() != null) {
+                // not loaded yet, so compare by file instead of reading it
+                this.matrix = null;
+                this.resolvedLeaf = null;
+                this.source = leaf.getSource();
+                this.hash = source.hashCode();
+            } else if (leaf.getSharedMatrix() != null) {
+                this.matrix = null;
+                this.resolvedLeaf = leaf;
+                this.source = null;
+                this.hash = System.identityHashCode(leaf);
+            } else {
+                this.matrix = leaf.getMatrix();
+                this.resolvedLeaf = null;
+                this.source = null;
+                this.hash = Arrays.deepHashCode(matrix);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (hash != other.hash || type != other.type) {
+                return false;
+            }
+            if (operands != null) {
+                return operands.equals(other.operands);
+            }
+            if (source != null || other.source != null) {
+                return source != null && source.equals(other.source);
+            }
+            if (resolvedLeaf != null || other.resolvedLeaf != null) {
+                return resolvedLeaf == other.resolvedLeaf;
+            }
+            return matrix == other.matrix || Arrays.deepEquals(matrix, other.matrix);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a computation tree into an equivalent one that is cheaper to evaluate.
+ * Every NEGATE and TRANSPOSE the engine computes costs a full copy of its operand, so the
+ * rules below remove or merge them. Rewrites never drop an operand, so a tree whose
+ * dimensions do not match still fails with the same error when it is computed.
+ */
+public class TreeOptimizer {
+
+    public enum Rule {
+        /** -(-A) becomes A */
+        DOUBLE_NEGATION,
+        /** T(T(A)) becomes A */
+        DOUBLE_TRANSPOSE,
+        /** T(A * B) becomes T(B) * T(A) when that transposes fewer entries */
+        TRANSPOSE_OF_PRODUCT,
+        /** A + (-B) + (-C) becomes A + -(B + C), one negation instead of several */
+        NEGATION_FACTORING
+    }
+
+    private final Map<Rule, Integer> fired = new EnumMap<>(Rule.class);
+    // a node reachable through several parents is rewritten once
+    private final Map<ComputationNode, ComputationNode> rewritten = new IdentityHashMap<>();
+
+    /**
+     * Optimizes the tree bottom-up and returns its new root, which is a different node
+     * when a rule fired at the root itself. Which rules fired is available from getFiredRules().
+     */
+    public ComputationNode optimize(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("Computation root is null");
+        }
+        fired.clear();
+        rewritten.clear();
+        return rewrite(root);
+    }
+
+    /**
+     * Returns how many times each rule fired during the last optimize() call.
+     */
+    public Map<Rule, Integer> getFiredRules() {
+        return Collections.unmodifiableMap(fired);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private ComputationNode rewrite(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return node;
+        }
+        ComputationNode known = rewritten.get(node);
+        if (known != null) {
+            return known;
+        }
+        ComputationNode result = rewriteNode(node);
+        rewritten.put(node, result);
+        return result;
+    }
+
+    private ComputationNode rewriteNode(ComputationNode node) {
+
+        List<ComputationNode> children = new ArrayList<>();
+        for (ComputationNode child : node.getChildren()) {
+            children.add(rewrite(child));
+        }
+        node.setChildren(children);
+
+        switch (node.getNodeType()) {
+            case NEGATE:
+                if (children.size() == 1 && isUnary(children.get(0), ComputationNodeType.NEGATE)) {
+                    fire(Rule.DOUBLE_NEGATION);
+                    return children.get(0).getChildren().get(0);
+                }
+                return node;
+            case TRANSPOSE:
+                if (children.size() != 1) {
+                    return node; // left for the engine to reject
+                }
+                ComputationNode child = children.get(0);
+                if (isUnary(child, ComputationNodeType.TRANSPOSE)) {
+                    fire(Rule.DOUBLE_TRANSPOSE);
+                    return child.getChildren().get(0);
+                }
+                if (child.getNodeType() == ComputationNodeType.MULTIPLY && isWellFormed(child)
+                        && transposingOperandsIsCheaper(child)) {
+                    fire(Rule.TRANSPOSE_OF_PRODUCT);
+                    List<ComputationNode> reversed = new ArrayList<>();
+                    List<ComputationNode> factors = child.getChildren();
+                    for (int i = factors.size() - 1; i >= 0; i--) {
+                        reversed.add(transposed(factors.get(i)));
+                    }
+                    return new ComputationNode(ComputationNodeType.MULTIPLY, reversed);
+                }
+                return node;
+            case ADD:
+                return factorNegations(node, children);
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * Transposing the product copies rows x cols entries. Transposing each factor instead
+     * copies every factor that is not already a transpose, while factors that are transposes
+     * lose theirs (their operand is used directly).
+     */
+    private boolean transposingOperandsIsCheaper(ComputationNode product) {
+        int[] shape = product.inferShape();
+        long productCost = (long) shape[0] * shape[1];
+
+        long operandsCost = 0;
+        for (ComputationNode factor : product.getChildren()) {
+            int[] s = factor.inferShape();
+            long size = (long) s[0] * s[1];
+            operandsCost += isUnary(factor, ComputationNodeType.TRANSPOSE) ? -size : size;
+        }
+        return operandsCost < productCost;
+    }
+
+    private ComputationNode transposed(ComputationNode node) {
+        if (isUnary(node, ComputationNodeType.TRANSPOSE)) {
+            return node.getChildren().get(0);
+        }
+        return new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(node)));
+    }
+
+    private ComputationNode factorNegations(ComputationNode node, List<ComputationNode> children) {
+        List<ComputationNode> kept = new ArrayList<>();
+        List<ComputationNode> negated = new ArrayList<>();
+        for (ComputationNode child : children) {
+            if (isUnary(child, ComputationNodeType.NEGATE)) {
+                negated.add(child.getChildren().get(0));
+            } else {
+                kept.add(child);
+            }
+        }
+        if (negated.size() < 2) {
+            return node;
+        }
+
+        fire(Rule.NEGATION_FACTORING);
+        ComputationNode negatedSum = new ComputationNode(ComputationNodeType.NEGATE,
+            new ArrayList<>(List.of(new ComputationNode(ComputationNodeType.ADD, negated))));
+        if (kept.isEmpty()) {
+            return negatedSum;
+        }
+        kept.add(negatedSum);
+        node.setChildren(kept);
+        return node;
+    }
+
+    /**
+     * A NEGATE or TRANSPOSE with anything but exactly one operand is malformed; no rule may
+     * unwrap it, or the extra operands would be lost instead of reported by the engine.
+     */
+    private static boolean isUnary(ComputationNode node, ComputationNodeType type) {
+        return node.getNodeType() == type && node.getChildren().size() == 1;
+    }
+
+    /**
+     * Whether inferShape() can be called on every node of the subtree.
+     */
+    private static boolean isWellFormed(ComputationNode node) {
+        switch (node.getNodeType()) {
+            case MATRIX:
+                return true;
+            case NEGATE:
+            case TRANSPOSE:
+                if (node.getChildren().size() != 1) {
+                    return false;
+                }
+                break;
+            default:
+                if (node.getChildren().isEmpty()) {
+                    return false;
+                }
+        }
+        for (ComputationNode child : node.getChildren()) {
+            if (!isWellFormed(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void fire(Rule rule) {
+        fired.merge(rule, 1, Integer::sum);
+    }
+}
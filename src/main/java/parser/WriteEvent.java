@@ -0,0 +1,30 @@
+package parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one OutputWriter call that writes a result or an error.
+ */
+@Name("parser.Write")
+@Label("Write Output")
+@Category({"Linear Algebra Engine", "I/O"})
+@Description("Writing a result matrix or an error")
+public class WriteEvent extends Event {
+
+    @Label("Target")
+    String target;
+
+    @Label("Format")
+    @Description("json, compact json, binary or error")
+    String format;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int cols;
+}
@@ -0,0 +1,88 @@
+package scheduling;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The idle workers of a TiredExecutor, without a lock. Every worker has its own slot, indexed
+ * by worker id, which holds the worker while it is idle. poll() scans the slots for the least
+ * tired idle worker (by TiredThread.compareTo) and claims it with a compare-and-set; if another
+ * thread claims it first, it simply scans again. Adding a worker is a single write.
+ * A worker's fatigue only changes while it is busy, so the order among idle workers is stable.
+ */
+public class IdleWorkerPool {
+
+    private final AtomicReferenceArray<TiredThread> slots;
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    public IdleWorkerPool(int numWorkers) {
+        slots = new AtomicReferenceArray<>(numWorkers);
+    }
+
+    /**
+     * Puts a worker back; wakes up threads waiting in take().
+     */
+    public void add(TiredThread worker) {
+        slots.set(worker.getWorkerId(), worker);
+        idleCount.incrementAndGet();
+        for (Thread waiter : waiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Removes and returns the least tired idle worker, or null if every worker is busy.
+     */
+    public TiredThread poll() {
+        while (idleCount.get() > 0) {
+            int best = -1;
+            TiredThread bestWorker = null;
+            for (int i = 0; i < slots.length(); i++) {
+                TiredThread worker = slots.get(i);
+                if (worker != null && (bestWorker == null || worker.compareTo(bestWorker) < 0)) {
+                    best = i;
+                    bestWorker = worker;
+                }
+            }
+            if (bestWorker == null) {
+                return null;
+            }
+            if (slots.compareAndSet(best, bestWorker, null)) {
+                idleCount.decrementAndGet();
+                return bestWorker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes and returns the least tired idle worker, waiting until there is one.
+     */
+    public TiredThread take() throws InterruptedException {
+        TiredThread worker = poll();
+        if (worker != null) {
+            return worker;
+        }
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            // registered before looking again, so an add() either is seen here or unparks us
+            while ((worker = poll()) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return worker;
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    public boolean isEmpty() {
+        return idleCount.get() == 0;
+    }
+}
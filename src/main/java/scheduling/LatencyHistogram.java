@@ -0,0 +1,54 @@
+package scheduling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in fixed buckets, one decade each from 1 µs to 1 s, plus one for anything
+ * longer. Recording never blocks, so it can sit on the task path; readers get counts that may
+ * lag a concurrent record by one.
+ */
+public class LatencyHistogram {
+
+    // upper bounds of the buckets in nanoseconds; the last bucket has none
+    private static final long[] BOUNDS = {
+        1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong sumNanos = new AtomicLong(0);
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sumNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Returns the upper bound of every bucket but the last, in nanoseconds.
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Returns how many durations fell in each bucket or a lower one; the last entry,
+     * for the unbounded bucket, is the total count.
+     */
+    public long[] getCumulativeCounts() {
+        long[] cumulative = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            total += counts.get(i);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+}
@@ -0,0 +1,162 @@
+package scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only view of a TiredExecutor's counters, meant to be sampled often, e.g. by a
+ * Prometheus scrape. Unlike getWorkerReport() it takes no lock and never changes the
+ * workers' accounts: the running idle stretch of an idle worker is added on the fly
+ * instead of being booked with setIdleTime().
+ */
+public class SchedulerMetrics {
+
+    private final TiredExecutor executor;
+
+    // highest idle time reported per worker; a sample racing with a worker that just
+    // booked its idle stretch could otherwise come out a little lower than the last one
+    private final AtomicLong[] reportedIdle;
+
+    public SchedulerMetrics(TiredExecutor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        this.executor = executor;
+        this.reportedIdle = new AtomicLong[executor.getWorkerCount()];
+        for (int i = 0; i < reportedIdle.length; i++) {
+            reportedIdle[i] = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * The counters of one worker at the moment it was sampled. Times are in nanoseconds.
+     */
+    public static class WorkerSample {
+        public final int workerId;
+        public final boolean busy;
+        public final long busyNanos;
+        public final long idleNanos;
+        public final double fatigue; // in seconds, as in the worker report
+        public final long tasksExecuted;
+
+        public WorkerSample(int workerId, boolean busy, long busyNanos, long idleNanos, double fatigue,
+                long tasksExecuted) {
+            this.workerId = workerId;
+            this.busy = busy;
+            this.busyNanos = busyNanos;
+            this.idleNanos = idleNanos;
+            this.fatigue = fatigue;
+            this.tasksExecuted = tasksExecuted;
+        }
+    }
+
+    public List<WorkerSample> sampleWorkers() {
+        List<WorkerSample> samples = new ArrayList<>(reportedIdle.length);
+        for (int i = 0; i < reportedIdle.length; i++) {
+            TiredThread worker = executor.getWorker(i);
+            long idle = reportedIdle[i].accumulateAndGet(worker.getTimeIdleSoFar(), Math::max);
+            samples.add(new WorkerSample(i, worker.isBusy(), worker.getTimeUsed(), idle,
+                    worker.getFatigue() / 1_000_000_000.0, worker.getTasksExecuted()));
+        }
+        return samples;
+    }
+
+    /**
+     * Returns how long the tasks run by the worker waited between being submitted and starting.
+     */
+    public LatencyHistogram getQueueWaits(int workerId) {
+        return executor.getQueueWaits(workerId);
+    }
+
+    public int getInFlightCount() {
+        return executor.getInFlightCount();
+    }
+
+    public double getFairnessScore() {
+        return executor.getFairnessScore();
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        List<WorkerSample> samples = sampleWorkers();
+
+        header(text, "tired_worker_busy_seconds_total", "counter", "Time each worker spent running tasks.");
+        for (WorkerSample sample : samples) {
+            line(text, "tired_worker_busy_seconds_total", sample.workerId, null, sample.busyNanos / 1e9);
+        }
+        header(text, "tired_worker_idle_seconds_total", "counter", "Time each worker spent waiting for a task.");
+        for (WorkerSample sample : samples) {
+            line(text, "tired_worker_idle_seconds_total", sample.workerId, null, sample.idleNanos / 1e9);
+        }
+        header(text, "tired_worker_busy", "gauge", "1 while the worker runs a task, else 0.");
+        for (WorkerSample sample : samples) {
+            line(text, "tired_worker_busy", sample.workerId, null, sample.busy ? 1 : 0);
+        }
+        header(text, "tired_worker_fatigue", "gauge", "Fatigue of each worker: its busy seconds times its fatigue factor.");
+        for (WorkerSample sample : samples) {
+            line(text, "tired_worker_fatigue", sample.workerId, null, sample.fatigue);
+        }
+        header(text, "tired_worker_tasks_total", "counter", "Tasks each worker has run.");
+        for (WorkerSample sample : samples) {
+            line(text, "tired_worker_tasks_total", sample.workerId, null, sample.tasksExecuted);
+        }
+
+        header(text, "tired_task_queue_wait_seconds", "histogram",
+                "Time from submitting a task until a worker started it, by that worker.");
+        long[] bounds = LatencyHistogram.getBounds();
+        for (WorkerSample sample : samples) {
+            LatencyHistogram waits = getQueueWaits(sample.workerId);
+            long[] cumulative = waits.getCumulativeCounts();
+            for (int i = 0; i < bounds.length; i++) {
+                line(text, "tired_task_queue_wait_seconds_bucket", sample.workerId, Double.toString(bounds[i] / 1e9),
+                        cumulative[i]);
+            }
+            long count = cumulative[cumulative.length - 1];
+            line(text, "tired_task_queue_wait_seconds_bucket", sample.workerId, "+Inf", count);
+            line(text, "tired_task_queue_wait_seconds_sum", sample.workerId, null, waits.getSumNanos() / 1e9);
+            line(text, "tired_task_queue_wait_seconds_count", sample.workerId, null, count);
+        }
+
+        header(text, "tired_executor_in_flight_tasks", "gauge", "Submitted tasks not done yet, queued ones included.");
+        line(text, "tired_executor_in_flight_tasks", -1, null, getInFlightCount());
+        header(text, "tired_executor_fairness_score", "gauge",
+                "Sum of squared deviations of the workers' fatigue from their average; 0 is perfectly fair.");
+        line(text, "tired_executor_fairness_score", -1, null, getFairnessScore());
+        return text.toString();
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static void header(StringBuilder text, String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends one sample; worker -1 means no worker label, le null no bucket label.
+     */
+    private static void line(StringBuilder text, String name, int worker, String le, double value) {
+        labels(text, name, worker, le).append(value).append('\n');
+    }
+
+    private static void line(StringBuilder text, String name, int worker, String le, long value) {
+        labels(text, name, worker, le).append(value).append('\n');
+    }
+
+    private static StringBuilder labels(StringBuilder text, String name, int worker, String le) {
+        text.append(name);
+        if (worker >= 0) {
+            text.append("{worker=\"").append(worker).append('"');
+            if (le != null) {
+                text.append(",le=\"").append(le).append('"');
+            }
+            text.append('}');
+        }
+        return text.append(' ');
+    }
+}
@@ -0,0 +1,20 @@
+package scheduling;
+
+/**
+ * Selects how a TiredExecutor gets tasks to its workers.
+ * TIRED hands every task to the least tired idle worker, one task at a time.
+ * TIRED_SPIN does the same through lock-free mailboxes: an idle worker spins on its mailbox
+ * for a short while before parking, which saves the wake-up when tasks follow each other closely.
+ * WORK_STEALING pushes whole batches to per-worker deques; a worker that runs out of
+ * tasks steals from the others, so nobody waits for an idle worker to be picked.
+ * VIRTUAL picks workers like TIRED, but runs each task on a new virtual thread charged to
+ * that worker instead of handing it to a platform thread. The workers are then only
+ * accounts (at most one task each at a time), so there can be many more of them than
+ * carrier threads; see TiredExecutor.setCarrierThreads.
+ */
+public enum SchedulerMode {
+    TIRED,
+    TIRED_SPIN,
+    WORK_STEALING,
+    VIRTUAL
+}
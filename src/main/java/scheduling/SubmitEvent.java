@@ -0,0 +1,34 @@
+package scheduling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a submit or submitAll call, lasting until the call returned:
+ * for submit() until an idle worker took the task, for submitAll() until every task was done.
+ */
+@Name("scheduling.Submit")
+@Label("Submit")
+@Category({"Linear Algebra Engine", "Scheduler"})
+@Description("A submit or submitAll call of a TiredExecutor")
+@StackTrace(false)
+public class SubmitEvent extends Event {
+
+    @Label("Tasks")
+    int tasks;
+
+    @Label("Waits For Completion")
+    @Description("True for submitAll, which returns once its tasks are done")
+    boolean waitsForCompletion;
+
+    @Label("In Flight")
+    @Description("Tasks of the executor not done yet when the call was made")
+    int inFlight;
+
+    @Label("Scheduler")
+    String scheduler;
+}
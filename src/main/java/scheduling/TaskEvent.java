@@ -0,0 +1,41 @@
+package scheduling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one task run by a TiredExecutor worker, in any SchedulerMode.
+ * A long queue wait next to idle workers points at a dispatch stall; the fatigue of the
+ * workers over time shows how evenly the executor spreads its tasks.
+ */
+@Name("scheduling.Task")
+@Label("Task")
+@Category({"Linear Algebra Engine", "Scheduler"})
+@Description("A task run by a TiredExecutor worker")
+@StackTrace(false)
+public class TaskEvent extends Event {
+
+    @Label("Worker")
+    int workerId;
+
+    @Label("Queue Wait")
+    @Description("From submitting the task until a worker started it")
+    @Timespan
+    long queueWait;
+
+    @Label("Fatigue")
+    @Description("Fatigue of the worker after the task")
+    double fatigue;
+
+    @Label("Batch Size")
+    @Description("Tasks submitted together with this one, 1 for submit()")
+    int batchSize;
+
+    @Label("Failed")
+    boolean failed;
+}
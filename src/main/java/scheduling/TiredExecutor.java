@@ -1,106 +1,173 @@
 package scheduling;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TiredExecutor {
 
     private final TiredThread[] workers;
-    private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
-    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final IdleWorkerPool idleWorkers; // least tired first, without a lock
+    private final AtomicInteger inFlight = new AtomicInteger(0); // submitted tasks not done yet, queued ones included
+    private final ConcurrentLinkedQueue<TaskBatch> pending = new ConcurrentLinkedQueue<>(); // batches with tasks not handed out yet
+    private final TaskSlot[] slots; // one reusable task wrapper per worker
+    private final WorkStealingPool stealingPool; // null unless in SchedulerMode.WORK_STEALING
+    private final ThreadFactory virtualThreads; // null unless in SchedulerMode.VIRTUAL
+    private final SchedulerMode mode;
+    private final LatencyHistogram[] queueWaits; // per worker, of the tasks it ran
 
     public TiredExecutor(int numThreads) {
+        this(numThreads, SchedulerMode.TIRED);
+    }
+
+    public TiredExecutor(int numThreads, SchedulerMode mode) {
+        this.mode = mode;
         workers = new TiredThread[numThreads];
+        slots = new TaskSlot[numThreads];
+        queueWaits = new LatencyHistogram[numThreads];
+        idleWorkers = new IdleWorkerPool(numThreads);
+        stealingPool = mode == SchedulerMode.WORK_STEALING ? new WorkStealingPool(numThreads) : null;
+        virtualThreads = mode == SchedulerMode.VIRTUAL ? Thread.ofVirtual().name("tired-virtual-", 0).factory() : null;
         Random rand = new Random();
         for (int i = 0; i < numThreads; i++) {
             double fatigue = rand.nextDouble() + 0.5;
-            workers[i] = new TiredThread(i, fatigue);
-            idleMinHeap.add(workers[i]);
+            workers[i] = new TiredThread(i, fatigue, stealingPool, mode == SchedulerMode.TIRED_SPIN);
+            slots[i] = new TaskSlot(workers[i]);
+            queueWaits[i] = new LatencyHistogram();
+            if (stealingPool != null) {
+                stealingPool.register(i, workers[i]);
+            } else {
+                idleWorkers.add(workers[i]);
+            }
+        }
+        if (virtualThreads != null) {
+            return; // the workers only keep the accounts, their tasks run on virtual threads
         }
         for (TiredThread worker : workers) {
             worker.start();
         }
     }
+
+    /**
+     * Sets how many platform threads carry the virtual threads of SchedulerMode.VIRTUAL.
+     * This sets the JVM-wide jdk.virtualThreadScheduler system properties, which the JDK reads
+     * once, when the first virtual thread of the process starts. Call it at startup, before
+     * any virtual thread exists; later calls have no effect.
+     */
+    public static void setCarrierThreads(int carriers) {
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", Integer.toString(carriers));
+        System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", Integer.toString(Math.max(carriers, 256)));
+    }
     
     public void submit(Runnable task) {
+        SubmitEvent event = new SubmitEvent();
+        event.begin();
+        long submittedAt = System.nanoTime();
+        int alreadyInFlight = inFlight.getAndIncrement();
+        if (stealingPool != null) {
+            stealingPool.push(List.of(track(task, null, submittedAt)));
+            commit(event, 1, false, alreadyInFlight);
+            return;
+        }
+
         TiredThread worker = null;
         while (worker == null) {
             try {
-                worker = idleMinHeap.take(); // blocks until a worker is available
+                worker = idleWorkers.take(); // blocks until a worker is available
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
 
-        TiredThread finalWorker = worker;
-
-        Runnable wrappedTask = () -> {
-            try {
-                long startTime = System.nanoTime();
-                task.run();
-                long endTime = System.nanoTime();
-                finalWorker.increaseTimeUsed(endTime - startTime);
-            } finally {
-                synchronized (inFlight) {
-                    inFlight.decrementAndGet();
-                    idleMinHeap.add(finalWorker);
-                    inFlight.notifyAll();
-                }
-                
-            }
-        };
-        inFlight.incrementAndGet();
         try {
-            finalWorker.newTask(wrappedTask);
+            hand(worker, task, null, submittedAt);
         } catch (IllegalStateException e) {
             inFlight.decrementAndGet();
-            idleMinHeap.add(finalWorker);
+            idleWorkers.add(worker);
             throw new RuntimeException("Failed to submit task to worker", e);
         }
+        commit(event, 1, false, alreadyInFlight);
     }
 
 
+    /**
+     * Runs the tasks and waits until every one of them is done. Only these tasks are waited
+     * for, not those other threads submit meanwhile. If a task throws, the others still
+     * run and the first exception is rethrown here once they are done.
+     */
     public void submitAll(Iterable<Runnable> tasks) {
-        for (Runnable task : tasks) {
-            try {
-                submit(task);
-            } catch (RuntimeException e) {
-                throw new RuntimeException("Failed to submit task: " + task);
+        SubmitEvent event = new SubmitEvent();
+        event.begin();
+        int alreadyInFlight = inFlight.get();
+        TaskBatch batch = enqueue(tasks);
+        try {
+            if (batch != null) {
+                batch.done.join();
             }
-        }
-
-        //Wait for all tasks to be completed
-        synchronized (inFlight) {
-            while (inFlight.get() > 0) {
-                try {
-                    inFlight.wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } 
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw e;
+        } finally {
+            commit(event, batch == null ? 0 : batch.tasks.size(), true, alreadyInFlight);
         }
-        
     }
 
 
+    /**
+     * Queues the tasks without waiting for idle workers and returns a future that completes
+     * once all of them are done, or completes exceptionally with the first exception a task
+     * threw. The future belongs to this batch alone.
+     * In TIRED mode the tasks that find no idle worker wait in a queue; each worker that
+     * finishes a task hands the next queued one to the least tired idle worker.
+     */
+    public CompletableFuture<Void> submitAllAsync(Iterable<Runnable> tasks) {
+        TaskBatch batch = enqueue(tasks);
+        return batch == null ? CompletableFuture.completedFuture(null) : batch.done;
+    }
+
+
+    /**
+     * Waits for every submitted task to finish, then stops the workers.
+     */
     public void shutdown() throws InterruptedException {
+        synchronized (inFlight) {
+            while (inFlight.get() > 0) {
+                inFlight.wait();
+            }
+        }
+        if (stealingPool != null) {
+            stealingPool.shutdown();
+        } else if (virtualThreads == null) {
+            for (TiredThread worker : workers) {
+                worker.shutdown();
+            }
+        }
+        // wait for every worker to drain its current task and exit
         for (TiredThread worker : workers) {
-            worker.shutdown();
+            worker.join();
         }
     }
 
 
     public synchronized String getWorkerReport() {
         String report = "Worker Report:\n";
-        double totalFatigue = 0;
         
         for (TiredThread worker : workers) {
             if (!worker.isBusy())
                 worker.setIdleTime();
             
             double currentFatigue = worker.getFatigue() / 1_000_000_000.0;
-            totalFatigue += currentFatigue;
 
             report += String.format("Worker %d - Current status: %s, Fatigue: %.2f, Time Used: %.2f s, Time Idle: %.2f s\n",
                     worker.getWorkerId(),
@@ -111,24 +178,274 @@ public class TiredExecutor {
         }
         
         if (workers.length > 0) { 
-            double avgFatigue = totalFatigue / workers.length;
-            double sumSquaredDeviations = 0;
-            for (TiredThread worker : workers) {
- 
-                double deviation = (worker.getFatigue() / 1_000_000_000.0) - avgFatigue;
-                sumSquaredDeviations += Math.pow(deviation, 2);
-            }
-
-            report += (String.format("Fairness Score: %.4f\n", sumSquaredDeviations));
+            report += (String.format("Fairness Score: %.4f\n", getFairnessScore()));
         }
         return report;
     }
 
 
+    /**
+     * Returns the sum of the squared deviations of the workers' fatigue (in seconds) from
+     * their average: 0 when every worker is exactly as tired as the others.
+     */
+    public double getFairnessScore() {
+        if (workers.length == 0) {
+            return 0;
+        }
+        double totalFatigue = 0;
+        for (TiredThread worker : workers) {
+            totalFatigue += worker.getFatigue() / 1_000_000_000.0;
+        }
+        double avgFatigue = totalFatigue / workers.length;
+        double sumSquaredDeviations = 0;
+        for (TiredThread worker : workers) {
+            double deviation = (worker.getFatigue() / 1_000_000_000.0) - avgFatigue;
+            sumSquaredDeviations += Math.pow(deviation, 2);
+        }
+        return sumSquaredDeviations;
+    }
+
+
     // HELPER FUNCTIONS
 
+    /**
+     * Queues the tasks as one batch and returns it, or returns null if there are none.
+     */
+    private TaskBatch enqueue(Iterable<Runnable> tasks) {
+        List<Runnable> batchTasks = new ArrayList<>();
+        for (Runnable task : tasks) {
+            batchTasks.add(task);
+        }
+        if (batchTasks.isEmpty()) {
+            return null;
+        }
+
+        TaskBatch batch = new TaskBatch(batchTasks);
+        inFlight.addAndGet(batchTasks.size());
+
+        if (stealingPool != null) {
+            List<Runnable> tracked = new ArrayList<>(batchTasks.size());
+            for (Runnable task : batchTasks) {
+                tracked.add(track(task, batch, batch.submittedAt));
+            }
+            stealingPool.push(tracked);
+        } else {
+            pending.add(batch);
+            dispatchPending();
+        }
+        return batch;
+    }
+
+    private void commit(SubmitEvent event, int tasks, boolean waitsForCompletion, int alreadyInFlight) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.tasks = tasks;
+            event.waitsForCompletion = waitsForCompletion;
+            event.inFlight = alreadyInFlight;
+            event.scheduler = mode.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs a task for the worker, charges its run time to it and counts its completion
+     * (in SchedulerMode.VIRTUAL the TaskSlot counts it, see taskFinished).
+     */
+    private void runTracked(TiredThread worker, Runnable task, TaskBatch batch, long submittedAt) {
+        TaskEvent event = new TaskEvent();
+        event.begin();
+        boolean failed = false;
+        long startTime = System.nanoTime();
+        queueWaits[worker.getWorkerId()].record(startTime - submittedAt);
+        try {
+            task.run();
+            long endTime = System.nanoTime();
+            worker.increaseTimeUsed(endTime - startTime);
+        } catch (RuntimeException | Error e) {
+            failed = true;
+            if (batch != null) {
+                batch.failed(e);
+            } else {
+                // nobody waits for a single task; report it and keep the worker alive
+                worker.getUncaughtExceptionHandler().uncaughtException(worker, e);
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.workerId = worker.getWorkerId();
+                event.queueWait = startTime - submittedAt;
+                event.fatigue = worker.getFatigue() / 1_000_000_000.0;
+                event.batchSize = batch == null ? 1 : batch.tasks.size();
+                event.failed = failed;
+                event.commit();
+            }
+            worker.finishTask(); // before the worker can be handed its next task
+            if (virtualThreads == null) {
+                taskFinished(worker, batch);
+            }
+        }
+    }
+
+    /**
+     * Counts a task as done. Outside work-stealing mode the worker first goes back to the
+     * idle pool, and then hands out the next queued task, if there is one.
+     */
+    private void taskFinished(TiredThread worker, TaskBatch batch) {
+        if (stealingPool == null) {
+            idleWorkers.add(worker);
+        }
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+        if (batch != null) {
+            batch.taskDone();
+        }
+        if (stealingPool == null) {
+            dispatchPending();
+        }
+    }
+
+    /**
+     * Wraps a task for the work-stealing pool, where the worker is only known once it runs.
+     */
+    private Runnable track(Runnable task, TaskBatch batch, long submittedAt) {
+        return () -> runTracked(TiredThread.current(), task, batch, submittedAt);
+    }
+
+    /**
+     * Hands queued tasks to idle workers, least tired first, until either runs out.
+     */
+    private void dispatchPending() {
+        TaskBatch batch;
+        while ((batch = pending.peek()) != null) {
+            if (!batch.hasUnclaimed()) {
+                pending.remove(batch);
+                continue;
+            }
+            TiredThread worker = idleWorkers.poll();
+            if (worker == null) {
+                return; // the worker that becomes idle next will continue
+            }
+            Runnable task = batch.claim();
+            if (task == null) {
+                idleWorkers.add(worker); // another thread took the last one; look again
+                continue;
+            }
+            hand(worker, task, batch, batch.submittedAt);
+        }
+    }
+
+    /**
+     * Gives the task to the worker through the worker's own TaskSlot: to its thread, or in
+     * SchedulerMode.VIRTUAL to a new virtual thread that runs it on the worker's behalf.
+     */
+    private void hand(TiredThread worker, Runnable task, TaskBatch batch, long submittedAt) {
+        TaskSlot slot = slots[worker.getWorkerId()];
+        slot.task = task;
+        slot.batch = batch;
+        slot.submittedAt = submittedAt;
+        if (virtualThreads != null) {
+            virtualThreads.newThread(slot.onVirtualThread).start();
+        } else {
+            worker.newTask(slot);
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
     public int getInFlightCount() {
         return inFlight.get();
     }
 
+    TiredThread getWorker(int id) {
+        return workers[id];
+    }
+
+    LatencyHistogram getQueueWaits(int workerId) {
+        return queueWaits[workerId];
+    }
+
+    /**
+     * The tasks of one submitAllAsync call and the future completed when the last one is done.
+     * Queued tasks are claimed straight from the batch, so they need no wrapper of their own.
+     */
+    private static class TaskBatch {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final long submittedAt = System.nanoTime();
+        private final List<Runnable> tasks;
+        private final AtomicInteger next = new AtomicInteger(0); // first task not handed out yet
+        private final AtomicInteger remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        TaskBatch(List<Runnable> tasks) {
+            this.tasks = tasks;
+            this.remaining = new AtomicInteger(tasks.size());
+        }
+
+        boolean hasUnclaimed() {
+            return next.get() < tasks.size();
+        }
+
+        /**
+         * Returns the next task to hand out, or null if all of them have been.
+         */
+        Runnable claim() {
+            int i = next.getAndIncrement();
+            return i < tasks.size() ? tasks.get(i) : null;
+        }
+
+        void failed(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+
+        void taskDone() {
+            if (remaining.decrementAndGet() == 0) {
+                if (failure.get() == null) {
+                    done.complete(null);
+                } else {
+                    done.completeExceptionally(failure.get());
+                }
+            }
+        }
+    }
+
+    /**
+     * The reusable wrapper through which a worker receives its tasks outside work-stealing
+     * mode. A worker runs one task at a time and is only handed the next after the current
+     * one has put it back in the idle pool, so one wrapper per worker is enough.
+     */
+    private class TaskSlot implements Runnable {
+        private final TiredThread worker;
+        private final Runnable onVirtualThread;
+        private Runnable task;    // all set by hand() before the handoff, which publishes them
+        private TaskBatch batch;
+        private long submittedAt;
+
+        TaskSlot(TiredThread worker) {
+            this.worker = worker;
+            // the worker only goes back to the idle pool once runAs has settled its accounts;
+            // otherwise the next virtual thread could run on its behalf while they are updated
+            this.onVirtualThread = () -> {
+                TaskBatch currentBatch = batch;
+                worker.runAs(this);
+                taskFinished(worker, currentBatch);
+            };
+        }
+
+        @Override
+        public void run() {
+            // read before running: once the worker is idle again, hand() may refill the slot
+            Runnable current = task;
+            TaskBatch currentBatch = batch;
+            long currentSubmittedAt = submittedAt;
+            task = null;
+            batch = null;
+            runTracked(worker, current, currentBatch, currentSubmittedAt);
+        }
+    }
+
 }
@@ -4,6 +4,8 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 public class TiredThread extends Thread implements Comparable<TiredThread> {
 
@@ -17,15 +19,49 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     // Single-slot handoff queue; executor will put tasks here
     private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
 
+    // Single-slot mailbox used instead of the handoff queue with spinHandoff; no lock on either side
+    private final boolean spinHandoff;
+    private final AtomicReference<Runnable> mailbox = new AtomicReference<>();
+    private volatile boolean parked = false; // set while the worker may be parked waiting for its mailbox
+
+    // How often an idle worker checks its mailbox before parking; spinning only pays off with spare cores
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 2_000 : 0;
+
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
     private final AtomicLong timeIdle = new AtomicLong(0); // Total time spent idle
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
+    private final AtomicLong tasksExecuted = new AtomicLong(0); // Tasks run to the end
+    // Set once the end of the running task is booked; only touched by the thread running it
+    private boolean taskFinished = false;
+
+    private final WorkStealingPool pool; // Where the worker takes its tasks from in work-stealing mode, else null
+
+    // The worker a virtual thread runs its task for, in SchedulerMode.VIRTUAL
+    private static final ThreadLocal<TiredThread> actingFor = new ThreadLocal<>();
 
     public TiredThread(int id, double fatigueFactor) {
+        this(id, fatigueFactor, null);
+    }
+
+    /**
+     * Creates a worker that takes its tasks from the given pool instead of its handoff slot.
+     */
+    public TiredThread(int id, double fatigueFactor, WorkStealingPool pool) {
+        this(id, fatigueFactor, pool, false);
+    }
+
+    /**
+     * Creates a worker that, with spinHandoff, receives its tasks through a lock-free mailbox:
+     * it spins on the mailbox for a short while after each task and only then parks, so a
+     * task handed over quickly needs neither a lock nor a wake-up.
+     */
+    public TiredThread(int id, double fatigueFactor, WorkStealingPool pool, boolean spinHandoff) {
         this.id = id;
         this.fatigueFactor = fatigueFactor;
+        this.pool = pool;
+        this.spinHandoff = spinHandoff;
         this.idleStartTime.set(System.nanoTime());
         setName(String.format("FF=%.2f", fatigueFactor));
     }
@@ -38,6 +74,15 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return fatigueFactor * timeUsed.get();
     }
 
+    /**
+     * Returns the worker the calling thread runs tasks for: the thread itself, or the worker
+     * a virtual thread was started for by runAs. Null on any other thread.
+     */
+    public static TiredThread current() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof TiredThread ? (TiredThread) thread : actingFor.get();
+    }
+
     public boolean isBusy() {
         return busy.get();
     }
@@ -50,19 +95,43 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    /**
+     * Returns the idle time including the current idle stretch, without booking that
+     * stretch like setIdleTime() does, so it may be called from any thread at any time.
+     */
+    public long getTimeIdleSoFar() {
+        long idle = timeIdle.get();
+        return busy.get() ? idle : idle + (System.nanoTime() - idleStartTime.get());
+    }
+
+    public long getTasksExecuted() {
+        return tasksExecuted.get();
+    }
+
 
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
      * it throws IllegalStateException.
      */
-    public synchronized void newTask(Runnable task) {
-       if (handoff.offer(task)) {
-            busy.set(true);
-        } else { 
-            throw new IllegalStateException("Worker is not ready to accept a new task");
+    public void newTask(Runnable task) {
+        // busy before the task is published: once it is, the worker may finish it and
+        // clear the flag right away. A worker that refuses the task has one queued anyway.
+        busy.set(true);
+        if (spinHandoff) {
+            if (!mailbox.compareAndSet(null, task)) {
+                throw new IllegalStateException("Worker is not ready to accept a new task");
+            }
+            if (parked) {
+                LockSupport.unpark(this);
+            }
+            return;
+        }
+        synchronized (this) {
+            if (!handoff.offer(task)) {
+                throw new IllegalStateException("Worker is not ready to accept a new task");
+            }
         }
-
     }
 
     /**
@@ -70,6 +139,13 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
      * Inserts a poison pill so the worker wakes up and exits.
      */
     public void shutdown() {
+        if (spinHandoff) {
+            while (!mailbox.compareAndSet(null, POISON_PILL)) {
+                Thread.yield(); // the worker has not taken its last task yet
+            }
+            LockSupport.unpark(this);
+            return;
+        }
         try {
             handoff.put(POISON_PILL);
         } catch (InterruptedException e) {
@@ -80,10 +156,17 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
 
     @Override
     public void run() {
+        if (pool != null) {
+            for (Runnable task = pool.next(id); task != null; task = pool.next(id)) {
+                executeTask(task);
+            }
+            alive.set(false);
+            return;
+        }
         while (alive.get()) {
             Runnable task;
             try {
-                task = handoff.take();
+                task = spinHandoff ? takeFromMailbox() : handoff.take();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 shutdown();
@@ -97,14 +180,44 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         }   
     }
 
-    private synchronized void executeTask(Runnable task) {
-        timeIdle.addAndGet(System.nanoTime() - idleStartTime.get());
-        task.run();    
+    /**
+     * Runs the task on the calling thread as if this worker ran it, with the same time
+     * accounting. Used to run tasks on virtual threads; this worker's own thread is never started.
+     */
+    public void runAs(Runnable task) {
+        actingFor.set(this);
+        try {
+            executeTask(task);
+        } finally {
+            actingFor.remove();
+        }
+    }
+
+    /**
+     * Books the end of the running task: counts it, starts the idle stretch and clears busy.
+     * TiredExecutor calls this from within the task, before the worker goes back to the idle
+     * pool, because from then on it may be handed its next task; otherwise it is called once
+     * the task returns.
+     */
+    public void finishTask() {
+        taskFinished = true;
+        tasksExecuted.incrementAndGet();
         idleStartTime.set(System.nanoTime());
-        
         busy.compareAndSet(true, false);
     }
 
+    // not synchronized: a finishing task may hand the next one to another worker, whose
+    // newTask must never wait for that worker's own running task
+    private void executeTask(Runnable task) {
+        timeIdle.addAndGet(System.nanoTime() - idleStartTime.get());
+        busy.set(true);
+        taskFinished = false;
+        task.run();
+        if (!taskFinished) {
+            finishTask();
+        }
+    }
+
     @Override
     public int compareTo(TiredThread o) {
         double diff = getFatigue()-o.getFatigue();
@@ -118,6 +231,32 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     
     // HERLPER FUNCTIONS 
 
+    /**
+     * Waits for the next task in the mailbox: spins first, then parks until newTask unparks us.
+     */
+    private Runnable takeFromMailbox() throws InterruptedException {
+        for (int i = 0; i < SPINS; i++) {
+            if (mailbox.get() != null) { // read-only while spinning, the dispatcher writes this line
+                return mailbox.getAndSet(null);
+            }
+            Thread.onSpinWait();
+        }
+        // announce the nap before the last look, so newTask either is seen or unparks us
+        parked = true;
+        try {
+            Runnable task;
+            while ((task = mailbox.getAndSet(null)) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return task;
+        } finally {
+            parked = false;
+        }
+    }
+
     public void setIdleTime() {
         long oldVal;
         long newVal;
@@ -0,0 +1,104 @@
+package scheduling;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The per-worker task deques behind SchedulerMode.WORK_STEALING.
+ * A batch is split into contiguous runs, one per worker, and pushed without waiting for
+ * anybody. A worker takes tasks from the front of its own deque; once that is empty it
+ * steals from the back of the others, and it only parks when every deque is empty.
+ */
+public class WorkStealingPool {
+
+    private final ConcurrentLinkedDeque<Runnable>[] deques;
+    private final Thread[] owners;
+    private final AtomicIntegerArray sleeping; // 1 while the owner of that deque may be parked
+    private final AtomicInteger nextDeque = new AtomicInteger(0); // where the next batch starts
+    private volatile boolean shutdown = false;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WorkStealingPool(int numWorkers) {
+        deques = new ConcurrentLinkedDeque[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            deques[i] = new ConcurrentLinkedDeque<>();
+        }
+        owners = new Thread[numWorkers];
+        sleeping = new AtomicIntegerArray(numWorkers);
+    }
+
+    /**
+     * Registers the thread that owns deque id, so it can be woken up.
+     */
+    public void register(int id, Thread owner) {
+        owners[id] = owner;
+    }
+
+    /**
+     * Spreads the tasks over the deques in contiguous runs and wakes up parked workers.
+     * Successive batches start at different deques, so small batches do not all land on one worker.
+     */
+    public void push(List<Runnable> tasks) {
+        int n = deques.length;
+        int first = Math.floorMod(nextDeque.getAndIncrement(), n);
+        int runs = Math.min(n, tasks.size());
+        for (int k = 0; k < runs; k++) {
+            int from = (int) ((long) tasks.size() * k / runs);
+            int to = (int) ((long) tasks.size() * (k + 1) / runs);
+            deques[(first + k) % n].addAll(tasks.subList(from, to));
+        }
+        for (int i = 0; i < n; i++) {
+            if (sleeping.get(i) == 1) {
+                LockSupport.unpark(owners[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the next task for worker id, parking while there is none.
+     * Returns null once the pool is shut down and every deque is empty.
+     */
+    public Runnable next(int id) {
+        while (true) {
+            Runnable task = find(id);
+            if (task != null || shutdown) {
+                return task;
+            }
+            // announce the nap before looking again, so a concurrent push either
+            // is seen by the second look or sees the flag and unparks us
+            sleeping.set(id, 1);
+            task = find(id);
+            if (task == null && !shutdown) {
+                LockSupport.park(this);
+            }
+            sleeping.set(id, 0);
+            if (task != null) {
+                return task;
+            }
+        }
+    }
+
+    /**
+     * Lets the workers finish what is queued and then return null from next().
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread owner : owners) {
+            LockSupport.unpark(owner);
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private Runnable find(int id) {
+        Runnable task = deques[id].pollFirst();
+        for (int k = 1; task == null && k < deques.length; k++) {
+            task = deques[(id + k) % deques.length].pollLast();
+        }
+        return task;
+    }
+}
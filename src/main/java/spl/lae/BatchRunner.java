@@ -0,0 +1,182 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import memory.MatrixStorage;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.InputParser;
+import parser.OutputWriter;
+import scheduling.SchedulerMode;
+import scheduling.TiredExecutor;
+
+/**
+ * Runs many jobs in one JVM on one TiredExecutor. Reading and writing overlap with
+ * computing: while job N is computed, job N+1 is parsed on a background thread and
+ * job N-1's result is written on another.
+ *
+ * Jobs come either from a directory, where every *.json file is an input and its result goes
+ * to a file of the same name in the directory's "out" subdirectory, or from a manifest file
+ * with one "inputPath outputPath" pair per line (paths relative to the manifest, blank lines
+ * and lines starting with # ignored).
+ */
+public class BatchRunner {
+
+    private final int numThreads;
+    private final MatrixStorage storage;
+    private final boolean compact;
+    private final boolean binary;
+    private final SchedulerMode mode;
+
+    public BatchRunner(int numThreads, MatrixStorage storage, boolean compact, boolean binary) {
+        this(numThreads, storage, compact, binary, SchedulerMode.TIRED);
+    }
+
+    public BatchRunner(int numThreads, MatrixStorage storage, boolean compact, boolean binary, SchedulerMode mode) {
+        this.mode = mode;
+        this.numThreads = numThreads;
+        this.storage = storage;
+        this.compact = compact;
+        this.binary = binary;
+    }
+
+    /**
+     * One input file and where its result goes.
+     */
+    public static class Job {
+        public final Path input;
+        public final Path output;
+        public Job(Path input, Path output) { this.input = input; this.output = output; }
+    }
+
+    /**
+     * Lists the jobs of a directory or manifest, as described above.
+     */
+    public static List<Job> readJobs(Path batch) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        if (Files.isDirectory(batch)) {
+            Path outDir = batch.resolve("out");
+            Files.createDirectories(outDir);
+            try (Stream<Path> files = Files.list(batch)) {
+                files.filter(f -> Files.isRegularFile(f) && f.getFileName().toString().endsWith(".json"))
+                     .sorted()
+                     .forEach(f -> jobs.add(new Job(f, outDir.resolve(f.getFileName()))));
+            }
+            return jobs;
+        }
+
+        Path base = batch.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(batch)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] paths = line.split("\\s+");
+            if (paths.length != 2) {
+                throw new IllegalArgumentException("Manifest line needs an input and an output path: " + line);
+            }
+            jobs.add(new Job(base.resolve(paths[0]), base.resolve(paths[1])));
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs every job and returns how many of them failed. A failed job gets an error file,
+     * exactly as a single run of Main would write, and does not stop the others.
+     */
+    public int run(List<Job> jobs) throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(numThreads, mode);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        InputParser parser = new InputParser(); // only used on the reader thread
+        int failed = 0;
+
+        try {
+            Future<ComputationNode> next = jobs.isEmpty() ? null : reader.submit(() -> parser.parse(jobs.get(0).input.toString()));
+            Future<Boolean> previousWrite = null;
+
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                Future<ComputationNode> parsed = next;
+                if (i + 1 < jobs.size()) {
+                    Path input = jobs.get(i + 1).input;
+                    next = reader.submit(() -> parser.parse(input.toString()));
+                }
+
+                ComputationNode result = null;
+                String error = null;
+                try {
+                    ComputationNode root = parsed.get();
+                    result = root.getNodeType() == ComputationNodeType.MATRIX ? root
+                        : new LinearAlgebraEngine(executor, storage).evaluate(root);
+                } catch (ExecutionException e) {
+                    error = e.getCause().getMessage();
+                } catch (RuntimeException e) {
+                    error = e.getMessage();
+                }
+
+                // at most one result waits to be written while the next job computes
+                if (previousWrite != null && !waitFor(previousWrite)) {
+                    failed++;
+                }
+                ComputationNode finalResult = result;
+                String finalError = error;
+                previousWrite = writer.submit(() -> write(job, finalResult, finalError));
+            }
+            if (previousWrite != null && !waitFor(previousWrite)) {
+                failed++;
+            }
+        } finally {
+            reader.shutdownNow();
+            writer.shutdown();
+            writer.awaitTermination(Long.MAX_VALUE, java.util.concurrent.TimeUnit.NANOSECONDS);
+            executor.shutdown();
+        }
+        return failed;
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Writes a job's result or error; returns false if the job failed.
+     */
+    private boolean write(Job job, ComputationNode result, String error) throws IOException {
+        String output = job.output.toString();
+        if (error != null) {
+            OutputWriter.write(error, output);
+            return false;
+        }
+        try {
+            if (binary && result.getSharedMatrix() != null) {
+                OutputWriter.writeBinary(result.getSharedMatrix(), output);
+            } else if (binary) {
+                OutputWriter.writeBinary(result.getMatrix(), output);
+            } else if (result.getSharedMatrix() != null) {
+                OutputWriter.write(result.getSharedMatrix(), output, compact);
+            } else {
+                OutputWriter.write(result.getMatrix(), output, compact);
+            }
+        } finally {
+            result.release();
+        }
+        return true;
+    }
+
+    private boolean waitFor(Future<Boolean> write) throws InterruptedException {
+        try {
+            return write.get();
+        } catch (ExecutionException e) {
+            return false; // the output itself could not be written
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package spl.lae;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one operation of a LinearAlgebraEngine, from preparing it until
+ * its result is stored. Operations of the same wave run together, so their events overlap.
+ */
+@Name("spl.lae.Compute")
+@Label("Compute Node")
+@Category({"Linear Algebra Engine", "Engine"})
+@Description("One operation of a LinearAlgebraEngine")
+@StackTrace(false)
+public class ComputeEvent extends Event {
+
+    @Label("Operator")
+    String operator;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int cols;
+
+    @Label("Tasks")
+    int tasks;
+
+    @Label("Wave Size")
+    @Description("Operations computed together in this wave")
+    int waveSize;
+}
@@ -0,0 +1,160 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import memory.MatrixStorage;
+import parser.ComputationNode;
+import parser.InputParser;
+import parser.OutputWriter;
+import scheduling.SchedulerMetrics;
+import scheduling.SchedulerMode;
+import scheduling.TiredExecutor;
+
+/**
+ * Keeps one warmed-up worker pool alive and computes jobs sent over HTTP on the loopback
+ * interface, so a job costs milliseconds instead of a JVM start.
+ *
+ *   POST /jobs    body: a computation tree in the input JSON format, without {"file": ...} operands
+ *                 response: the result, or {"error": "..."} with status 400
+ *   GET  /report  the worker report of the shared pool
+ *   GET  /metrics the pool's SchedulerMetrics in the Prometheus text format
+ *
+ * Each job gets its own LinearAlgebraEngine on the shared TiredExecutor; up to
+ * maxConcurrentJobs jobs are parsed and computed at the same time. /report and /metrics
+ * are answered by their own threads, so they respond even while every job slot is taken.
+ */
+public class EngineServer {
+
+    private final TiredExecutor executor;
+    private final SchedulerMetrics metrics;
+    private final MatrixStorage storage;
+    private final boolean compact;
+    private final HttpServer server;
+    private final ExecutorService jobThreads;
+    private final ExecutorService requestThreads; // answer every request but the jobs themselves
+    private final ThreadLocal<InputParser> parsers = ThreadLocal.withInitial(InputParser::new);
+
+    public EngineServer(int port, int numThreads, int maxConcurrentJobs, MatrixStorage storage, boolean compact) throws IOException {
+        this(port, numThreads, maxConcurrentJobs, storage, compact, SchedulerMode.TIRED);
+    }
+
+    public EngineServer(int port, int numThreads, int maxConcurrentJobs, MatrixStorage storage, boolean compact,
+            SchedulerMode mode) throws IOException {
+        this.executor = new TiredExecutor(numThreads, mode);
+        this.metrics = new SchedulerMetrics(executor);
+        this.storage = storage;
+        this.compact = compact;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.jobThreads = Executors.newFixedThreadPool(maxConcurrentJobs);
+        this.requestThreads = Executors.newFixedThreadPool(2);
+
+        server.createContext("/jobs", this::queueJob);
+        server.createContext("/report", this::handleReport);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(requestThreads);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on (useful when it was created with port 0).
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting jobs, waits for running ones and shuts the worker pool down.
+     */
+    public void stop() throws InterruptedException {
+        server.stop(1);
+        jobThreads.shutdown();
+        // a job still running would otherwise hand its tasks to a pool that is shutting down
+        jobThreads.awaitTermination(1, TimeUnit.MINUTES);
+        requestThreads.shutdown();
+        executor.shutdown();
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Passes the job on to the job threads; the exchange is answered and closed there.
+     */
+    private void queueJob(HttpExchange exchange) {
+        jobThreads.execute(() -> {
+            try {
+                handleJob(exchange);
+            } catch (IOException e) {
+                // the client went away; there is nobody left to answer
+            }
+        });
+    }
+
+    private void handleJob(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, 405, "Use POST\n");
+                return;
+            }
+
+            ComputationNode result;
+            try {
+                ComputationNode root = parsers.get().parse(exchange.getRequestBody(), null); // no operand files
+                result = new LinearAlgebraEngine(executor, storage).evaluate(root);
+            } catch (Exception e) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(400, 0);
+                OutputWriter.write(e.getMessage(), exchange.getResponseBody());
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0); // chunked, the result is streamed row by row
+            try (OutputStream body = exchange.getResponseBody()) {
+                if (result.getSharedMatrix() != null) {
+                    OutputWriter.write(result.getSharedMatrix(), body, compact);
+                } else {
+                    OutputWriter.write(result.getMatrix(), body, compact);
+                }
+            } finally {
+                result.release();
+            }
+        }
+    }
+
+    private void handleReport(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendText(exchange, 200, executor.getWorkerReport());
+        }
+    }
+
+    // read-only and lock-free, so it can be scraped as often as wanted while jobs run
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            byte[] bytes = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,130 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The NodeTraces of one run and its critical path: the chain of dependent nodes whose own
+ * times (copy, dispatch and span) add up to the most. Speeding up a node off that path
+ * cannot make the run faster; barrier waits show how much the wave-by-wave schedule adds.
+ */
+public class ExecutionTrace {
+
+    private final List<NodeTrace> nodes;
+    private final long totalNanos;
+    private final List<NodeTrace> criticalPath = new ArrayList<>();
+    private final long criticalPathNanos;
+
+    ExecutionTrace(List<NodeTrace> nodes, long totalNanos) {
+        this.nodes = List.copyOf(nodes);
+        this.totalNanos = totalNanos;
+
+        // nodes are in dispatch order, so every child comes before its parents
+        long[] pathNanos = new long[nodes.size()];
+        int[] slowestChild = new int[nodes.size()];
+        int end = -1;
+        for (NodeTrace node : nodes) {
+            slowestChild[node.id] = -1;
+            for (int child : node.children) {
+                if (slowestChild[node.id] == -1 || pathNanos[child] > pathNanos[slowestChild[node.id]]) {
+                    slowestChild[node.id] = child;
+                }
+            }
+            long before = slowestChild[node.id] == -1 ? 0 : pathNanos[slowestChild[node.id]];
+            pathNanos[node.id] = before + node.getOwnNanos();
+            if (end == -1 || pathNanos[node.id] > pathNanos[end]) {
+                end = node.id;
+            }
+        }
+        for (int id = end; id != -1; id = slowestChild[id]) {
+            criticalPath.add(nodes.get(id));
+        }
+        Collections.reverse(criticalPath);
+        criticalPathNanos = end == -1 ? 0 : pathNanos[end];
+    }
+
+    public List<NodeTrace> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the wall time of the whole run, tree passes included.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the critical path from its first node to its last.
+     */
+    public List<NodeTrace> getCriticalPath() {
+        return Collections.unmodifiableList(criticalPath);
+    }
+
+    public long getCriticalPathNanos() {
+        return criticalPathNanos;
+    }
+
+    public long getBarrierWaitNanos() {
+        long total = 0;
+        for (NodeTrace node : nodes) {
+            total += node.getBarrierWaitNanos();
+        }
+        return total;
+    }
+
+    /**
+     * Writes the trace as JSON: the totals, the ids on the critical path and every node.
+     */
+    public void write(Path path) throws IOException {
+        try (JsonGenerator generator = new JsonFactory().createGenerator(path.toFile(), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeNumberField("totalNanos", totalNanos);
+            generator.writeNumberField("criticalPathNanos", criticalPathNanos);
+            generator.writeNumberField("barrierWaitNanos", getBarrierWaitNanos());
+            generator.writeArrayFieldStart("criticalPath");
+            for (NodeTrace node : criticalPath) {
+                generator.writeNumber(node.id);
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("nodes");
+            for (NodeTrace node : nodes) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", node.id);
+                generator.writeNumberField("wave", node.wave);
+                generator.writeStringField("operator", node.operator);
+                generator.writeArrayFieldStart("operandShapes");
+                for (int[] shape : node.operandShapes) {
+                    generator.writeArray(shape, 0, shape.length);
+                }
+                generator.writeEndArray();
+                generator.writeFieldName("resultShape");
+                generator.writeArray(node.resultShape, 0, node.resultShape.length);
+                generator.writeNumberField("flops", node.flops);
+                generator.writeNumberField("tasks", node.getTasks());
+                generator.writeNumberField("copyNanos", node.getCopyNanos());
+                generator.writeNumberField("dispatchNanos", node.getDispatchNanos());
+                generator.writeNumberField("computeNanos", node.getComputeNanos());
+                generator.writeNumberField("spanNanos", node.getSpanNanos());
+                generator.writeNumberField("barrierWaitNanos", node.getBarrierWaitNanos());
+                generator.writeArrayFieldStart("children");
+                for (int child : node.children) {
+                    generator.writeNumber(child);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package spl.lae;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import memory.MatrixSnapshot;
+import memory.SharedMatrix;
+import memory.VectorOrientation;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+/**
+ * Evaluates a chain of element-wise operators (ADD, NEGATE, TRANSPOSE) whose operands are
+ * all resolved, one output row at a time, without building any intermediate matrix.
+ * Transposes are pushed down to the operands: row i of T(X) is column i of X, so an operand
+ * under an odd number of transposes is read by column instead of by row.
+ */
+public class FusedKernel {
+
+    private final Expr root;
+    private final List<ComputationNode> inputs = new ArrayList<>();
+    private final int rows;
+    private final int cols;
+    private int operators = 0;
+
+    /**
+     * Compiles the subtree under root. Every MATRIX node reached is an operand; every other
+     * node must be ADD, NEGATE or TRANSPOSE with operands of matching shapes.
+     */
+    public FusedKernel(ComputationNode root) {
+        this.root = compile(root, false);
+        int[] shape = root.inferShape();
+        this.rows = shape[0];
+        this.cols = shape[1];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * Returns the number of operator nodes fused into this kernel.
+     */
+    public int operatorCount() {
+        return operators;
+    }
+
+    /**
+     * Returns the operand nodes, once per edge that reads them.
+     */
+    public List<ComputationNode> inputs() {
+        return inputs;
+    }
+
+    /**
+     * Computes output row i into out, which must have cols() entries.
+     * Safe to call from several threads at once for different rows.
+     */
+    public void computeRow(int i, double[] out) {
+        root.eval(i, out);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private Expr compile(ComputationNode node, boolean transposed) {
+        switch (node.getNodeType()) {
+            case MATRIX:
+                inputs.add(node);
+                return new Operand(node, transposed);
+            case NEGATE:
+                operators++;
+                return new Negate(compile(node.getChildren().get(0), transposed));
+            case TRANSPOSE:
+                operators++;
+                return compile(node.getChildren().get(0), !transposed);
+            case ADD:
+                operators++;
+                List<Expr> terms = new ArrayList<>();
+                for (ComputationNode child : node.getChildren()) {
+                    terms.add(compile(child, transposed));
+                }
+                return new Sum(terms);
+            default:
+                throw new IllegalArgumentException("Cannot fuse operator: " + node.getNodeType());
+        }
+    }
+
+    private interface Expr {
+        void eval(int row, double[] out);
+    }
+
+    private static class Negate implements Expr {
+        private final Expr operand;
+
+        Negate(Expr operand) {
+            this.operand = operand;
+        }
+
+        public void eval(int row, double[] out) {
+            operand.eval(row, out);
+            for (int j = 0; j < out.length; j++) {
+                out[j] = -out[j];
+            }
+        }
+    }
+
+    private static class Sum implements Expr {
+        private final List<Expr> terms;
+
+        Sum(List<Expr> terms) {
+            this.terms = terms;
+        }
+
+        public void eval(int row, double[] out) {
+            terms.get(0).eval(row, out);
+            double[] term = new double[out.length];
+            for (int t = 1; t < terms.size(); t++) {
+                terms.get(t).eval(row, term);
+                for (int j = 0; j < out.length; j++) {
+                    out[j] += term[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads row i of a resolved node, or column i when it sits under an odd number of
+     * transposes. Whatever copy that needs is made once, here, and shared by all rows.
+     */
+    private static class Operand implements Expr {
+        private SharedMatrix shared;   // read vector by vector when its orientation fits
+        private double[][] rowMajor;  // otherwise row-major rows...
+        private MatrixSnapshot columns; // ...or columns
+
+        Operand(ComputationNode node, boolean transposed) {
+            SharedMatrix matrix = node.getSharedMatrix();
+            VectorOrientation wanted = transposed ? VectorOrientation.COLUMN_MAJOR : VectorOrientation.ROW_MAJOR;
+            if (matrix != null && matrix.getOrientation() == wanted) {
+                shared = matrix;
+            } else if (matrix != null && transposed) {
+                columns = matrix.snapshot();
+            } else if (transposed) {
+                columns = MatrixSnapshot.ofRowMajor(node.getMatrix());
+            } else {
+                rowMajor = node.getMatrix();
+            }
+        }
+
+        public void eval(int row, double[] out) {
+            if (shared != null) {
+                System.arraycopy(shared.get(row).toArray(), 0, out, 0, out.length);
+            } else if (rowMajor != null) {
+                System.arraycopy(rowMajor[row], 0, out, 0, out.length);
+            } else {
+                columns.copyColumn(row, out);
+            }
+        }
+    }
+}
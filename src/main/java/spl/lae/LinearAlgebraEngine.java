@@ -1,127 +1,393 @@
 package spl.lae;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import memory.BlockedMatMul;
+import memory.MatrixStorage;
 import memory.SharedMatrix;
 import memory.SharedVector;
+import memory.VectorOrientation;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
+import parser.SubexpressionMerger;
+import parser.TreeOptimizer;
+import scheduling.SchedulerMode;
 import scheduling.TiredExecutor;
 
 public class LinearAlgebraEngine {
 
-    private SharedMatrix leftMatrix = new SharedMatrix();
-    private SharedMatrix rightMatrix = new SharedMatrix();
     private TiredExecutor executor;
+    private final MatrixStorage storage;
+    private final boolean ownsExecutor; // only an engine that created its executor shuts it down
+
+    // how many parents still have to consume each node's result
+    private final Map<ComputationNode, Integer> consumers = new IdentityHashMap<>();
+
+    // results computed by this engine; only these may be taken over and modified in place,
+    // never a matrix the caller put in the tree (which may even be a read-only file mapping)
+    private final java.util.Set<SharedMatrix> computed = java.util.Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // the operations dispatched together in the most recent wave, kept for the worker report
+    private List<Operation> lastWave = List.of();
+
+    // how often each rewrite rule fired on the tree of the most recent run
+    private Map<TreeOptimizer.Rule, Integer> lastRewrites = Map.of();
+
+    // how many duplicate subexpressions of the most recent run were merged into shared nodes
+    private int lastMergedNodes = 0;
+
+    // the task granularity chosen for every operation of the most recent run, in dispatch order
+    private final List<Granularity> lastGranularity = new ArrayList<>();
+
+    // a task should carry at least this many element operations, so the few microseconds
+    // it takes to hand it to a worker stay a small fraction of its run time
+    public static final long MIN_TASK_WORK = 1 << 14;
+
+    // yet every worker should get this many tasks when there is enough work, to balance load
+    private static final int TASKS_PER_WORKER = 4;
+
+    // per-node tracing, off by default because it wraps and times every task
+    private boolean tracing = false;
+    private final List<NodeTrace> traceNodes = new ArrayList<>();
+    private final Map<ComputationNode, NodeTrace> traced = new IdentityHashMap<>();
+    private int traceWaves = 0;
+    private ExecutionTrace lastTrace = null;
 
     public LinearAlgebraEngine(int numThreads) {
-        this.executor = new TiredExecutor(numThreads);
+        this(numThreads, MatrixStorage.VECTORS);
+    }
+
+    /**
+     * Creates an engine whose working matrices and intermediate results use the given storage
+     * backend. With MatrixStorage.OFF_HEAP, results stay off-heap between operations and each
+     * one is released as soon as its last consumer has been computed.
+     */
+    public LinearAlgebraEngine(int numThreads, MatrixStorage storage) {
+        this(numThreads, storage, SchedulerMode.TIRED);
     }
 
+    /**
+     * Creates an engine with its own executor in the given scheduler mode.
+     */
+    public LinearAlgebraEngine(int numThreads, MatrixStorage storage, SchedulerMode mode) {
+        this.executor = new TiredExecutor(numThreads, mode);
+        this.storage = storage;
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * Creates an engine that runs its tasks on an existing executor, which it never shuts down.
+     * Several such engines, e.g. one per job in a long-running server, can share one worker pool.
+     */
+    public LinearAlgebraEngine(TiredExecutor executor, MatrixStorage storage) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        this.executor = executor;
+        this.storage = storage;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * Resolves the tree wave by wave: every node whose operands are all matrices is
+     * prepared, the row tasks of all of them go to the executor as one batch, and only
+     * then are their results stored. Independent subtrees, like the two products in
+     * (A*B) + (C*D), therefore run at the same time. A chain of element-wise operators
+     * whose operands are all ready, like T(-(A + B)), is computed as one fused operation.
+     * Before that, the tree is simplified by a TreeOptimizer and identical subtrees are
+     * merged by a SubexpressionMerger, so each distinct subexpression is computed once and
+     * the returned node may be a different node than computationRoot.
+     * Afterwards, whether it succeeded or failed, an engine that created its own executor
+     * shuts it down, so it can only run once; use evaluate() to keep the workers alive.
+     */
     public ComputationNode run(ComputationNode computationRoot) {
+        try {
+            return evaluate(computationRoot);
+        } finally {
+            if (ownsExecutor) {
+                try {
+                    executor.shutdown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Executor shutdown interrupted", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the tree like run(), but leaves the executor running, so the engine can
+     * evaluate any number of trees one after another.
+     */
+    public ComputationNode evaluate(ComputationNode computationRoot) {
         if (computationRoot == null) {
             throw new IllegalArgumentException("Computation root is null");
         }
 
+        TreeOptimizer optimizer = new TreeOptimizer();
+        computationRoot = optimizer.optimize(computationRoot);
+        lastRewrites = optimizer.getFiredRules();
+
         recursiveAssociativeNesting(computationRoot);
+        SubexpressionMerger merger = new SubexpressionMerger();
+        computationRoot = merger.merge(computationRoot);
+        lastMergedNodes = merger.getMergedCount();
+
+        consumers.clear();
+        computed.clear();
+        lastGranularity.clear();
+        traceNodes.clear();
+        traced.clear();
+        traceWaves = 0;
+        countConsumers(computationRoot);
+        long start = System.nanoTime();
 
         // needs to keep resolving until the root finally becomes a matrix
         while (computationRoot.getNodeType() != ComputationNodeType.MATRIX) {
 
-            ComputationNode nodeToResolve = computationRoot.findResolvable();
+            List<ComputationNode> nodesToResolve = findReadyNodes(computationRoot);
 
-            if (nodeToResolve == null) {
+            if (nodesToResolve.isEmpty()) {
                 throw new IllegalStateException("no resolvable node");
             }
 
-            loadAndCompute(nodeToResolve);
+            computeWave(nodesToResolve);
         }
 
-        try {
-            executor.shutdown();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Executor shutdown interrupted", e);
+        if (tracing) {
+            lastTrace = new ExecutionTrace(traceNodes, System.nanoTime() - start);
+            traced.clear(); // don't keep the tree alive
         }
-
         return computationRoot;
     }
 
 
     public void loadAndCompute(ComputationNode node) {
+        computeWave(List.of(node));
+    }
+
+    /**
+     * Prepares every node, runs all of their tasks as one batch, then stores the results.
+     * Operands are only released or taken over once the whole batch is done, because
+     * other nodes in the same wave may still be reading them.
+     */
+    private void computeWave(List<ComputationNode> nodes) {
+        List<Operation> wave = new ArrayList<>();
+        List<Runnable> tasks = new ArrayList<>();
+        for (ComputationNode node : nodes) {
+            ComputeEvent event = new ComputeEvent();
+            event.begin();
+            long prepareStart = System.nanoTime();
+            Operation op = prepare(node);
+            op.event = event;
+            wave.add(op);
+            if (tracing) {
+                op.trace = trace(op, System.nanoTime() - prepareStart);
+                tasks.addAll(op.trace.timed(op.tasks));
+            } else {
+                tasks.addAll(op.tasks);
+            }
+        }
+        lastWave = wave;
+        traceWaves++;
+
+        long submitted = System.nanoTime();
+        executor.submitAll(tasks);
+        long waveEnd = System.nanoTime();
+
+        for (Operation op : wave) {
+            if (op.trace != null) {
+                op.trace.waveDone(submitted, waveEnd);
+            }
+            finish(op);
+            commit(op.event, op, wave.size());
+        }
+    }
+
+    private Operation prepare(ComputationNode node) {
+        if (isFusible(node) && !allChildrenResolved(node)) {
+            return prepareFused(node);
+        }
 
         validateTaskDimensions(node);
         ComputationNodeType type = node.getNodeType();
         List<ComputationNode> children = node.getChildren();
-
-        // Deep copy the left matrix
-        double[][] originalLeft = children.get(0).getMatrix();
-        double[][] deepCopyLeft = new double[originalLeft.length][];
-        for (int i = 0; i < originalLeft.length; i++) {
-            deepCopyLeft[i] = originalLeft[i].clone(); 
+        ComputationNode leftChild = children.get(0);
+        ComputationNode rightChild = children.size() > 1 ? children.get(1) : null;
+        Operation op = new Operation(node);
+
+        // The right matrices are only read, so a child's own result can be used as is
+        List<ComputationNode> rightChildren = children.subList(1, children.size());
+        op.rights = new ArrayList<>();
+        for (ComputationNode child : rightChildren) {
+            op.rights.add(borrowOperand(child));
         }
-        leftMatrix.loadRowMajor(deepCopyLeft);
+        op.right = rightChild != null ? op.rights.get(0) : storage.newMatrix();
 
-        // If right matrix exists, we load it
-        if (children.size() > 1) {
-            rightMatrix.loadRowMajor(children.get(1).getMatrix());
+        // ADD, NEGATE and TRANSPOSE work in place on the left matrix, so it must be ours
+        if (type == ComputationNodeType.MULTIPLY) {
+            op.left = borrowOperand(leftChild);
         } else {
-            rightMatrix.loadRowMajor(new double[0][0]);
+            op.left = ownOperand(leftChild, !rightChildren.contains(leftChild));
         }
+        op.leftShape = new int[]{op.left.rows(), op.left.cols()};
+        op.rightShape = new int[]{op.right.rows(), op.right.cols()};
        
-        List<Runnable> tasks;
+        op.result = op.left;
+        int vectors = op.left.length();
+        long vectorLength = vectors == 0 ? 0 : (long) op.left.rows() * op.left.cols() / vectors;
         switch (type) {
             case ADD:
-                tasks = createAddTasks();
+                op.tasks = createAddTasks(op.left, op.rights,
+                    chooseRowsPerTask(op, vectors, vectorLength * op.rights.size(), 1));
                 break;
             case MULTIPLY:
-                tasks = createMultiplyTasks();
+                BlockedMatMul kernel = new BlockedMatMul(op.right.snapshot());
+                op.result = storage.newMatrix();
+                op.result.loadRowMajor(new double[op.left.rows()][kernel.cols()]);
+                op.tasks = createMultiplyTasks(op.left, kernel, op.result,
+                    chooseRowsPerTask(op, op.left.rows(), 2L * op.left.cols() * kernel.cols(), BlockedMatMul.MR));
                 break;
             case NEGATE:
-                tasks = createNegateTasks();
+                op.tasks = createNegateTasks(op.left, chooseRowsPerTask(op, vectors, vectorLength, 1));
                 break;
             case TRANSPOSE:
-                tasks = createTransposeTasks();
+                // only flips each vector's orientation, so every vector costs about the same
+                op.tasks = createTransposeTasks(op.left, chooseRowsPerTask(op, vectors, 1, 1));
                 break;
             default:
                 throw new IllegalArgumentException("Unknown type: " + type);
         }
+        return op;
+    }
 
-        executor.submitAll(tasks);
-        node.resolve(leftMatrix.readRowMajor());
+    /**
+     * Prepares an element-wise chain rooted at node as a single operation: one task per
+     * output row runs the whole chain, reading the operands directly.
+     */
+    private Operation prepareFused(ComputationNode node) {
+        validateChain(node);
+        FusedKernel kernel = new FusedKernel(node);
+
+        Operation op = new Operation(node);
+        op.inputs = kernel.inputs();
+        op.fusedOperators = kernel.operatorCount();
+        op.result = storage.newMatrix();
+        op.result.loadRowMajor(new double[kernel.rows()][kernel.cols()]);
+        op.left = op.result;
+        op.right = op.result;
+        op.leftShape = new int[]{kernel.rows(), kernel.cols()};
+        op.rightShape = op.leftShape;
+        long workPerRow = (long) kernel.cols() * (kernel.inputs().size() + kernel.operatorCount());
+        op.tasks = createFusedTasks(kernel, op.result, chooseRowsPerTask(op, kernel.rows(), workPerRow, 1));
+        return op;
     }
 
-    public List<Runnable> createAddTasks() {
-        int rows = leftMatrix.length();
+    private void finish(Operation op) {
+        List<ComputationNode> children = op.inputs;
+        for (ComputationNode child : children) {
+            Integer remaining = consumers.get(child);
+            if (remaining != null) {
+                consumers.put(child, remaining - 1);
+            }
+        }
+
+        // free temporary operand copies, then the children nobody else is waiting for
+        List<SharedMatrix> operands = new ArrayList<>(op.rights);
+        operands.add(op.left);
+        operands.add(op.right);
+        for (SharedMatrix operand : operands) {
+            if (operand != op.result && !isHeldByChild(operand, children)) {
+                operand.release();
+            }
+        }
+        for (ComputationNode child : children) {
+            Integer remaining = consumers.get(child);
+            if (remaining != null && remaining == 0) {
+                child.release();
+            }
+        }
 
+        op.node.resolve(op.result);
+        computed.add(op.result);
+    }
+
+    /**
+     * Creates one task per rowsPerTask consecutive rows that adds the rows of every right matrix
+     * to the left rows in a single sweep, so a k-operand sum needs one batch instead of k-1.
+     */
+    public List<Runnable> createAddTasks(SharedMatrix leftMatrix, List<SharedMatrix> rightMatrices, int rowsPerTask) {
+        int rows = leftMatrix.length();
         List<Runnable> tasks = new java.util.ArrayList<>();
 
-        for (int i = 0; i<rows; i++) {
-            final int row = i;
+        for (int i = 0; i < rows; i += rowsPerTask) {
+            final int from = i;
+            final int to = Math.min(i + rowsPerTask, rows);
 
             tasks.add(() -> {
-                SharedVector leftRow  = leftMatrix.get(row);
-                SharedVector rightRow = rightMatrix.get(row);
-
-                leftRow.add(rightRow);
+                for (int row = from; row < to; row++) {
+                    SharedVector leftRow = leftMatrix.get(row);
+                    for (SharedMatrix rightMatrix : rightMatrices) {
+                        leftRow.add(rightMatrix.get(row));
+                    }
+                }
             });
         }
-       
+
         return tasks;
     }
 
 
-    public List<Runnable> createMultiplyTasks() {
+    /**
+     * Creates one task per rowsPerTask left rows (best a multiple of BlockedMatMul.MR). All tasks
+     * share the packed right operand in kernel and store their rows in productMatrix.
+     */
+    public List<Runnable> createMultiplyTasks(SharedMatrix leftMatrix, BlockedMatMul kernel, SharedMatrix productMatrix,
+            int rowsPerTask) {
         int rows = leftMatrix.length();
         List<Runnable> tasks = new java.util.ArrayList<>();
 
-        for (int i = 0; i< rows; i++) {
-            final int row = i;
+        for (int i = 0; i < rows; i += rowsPerTask) {
+            final int from = i;
+            final int to = Math.min(i + rowsPerTask, rows);
 
             tasks.add(() -> {
-                SharedVector rowVector = leftMatrix.get(row);
+                double[][] block = new double[to - from][];
+                for (int row = from; row < to; row++) {
+                    block[row - from] = leftMatrix.get(row).toArray();
+                }
+
+                double[][] product = kernel.multiply(block);
+                for (int row = from; row < to; row++) {
+                    productMatrix.get(row).setValues(product[row - from]);
+                }
+            });
+        }
+
+        return tasks;
+    }
 
-                rowVector.vecMatMul(rightMatrix);
+
+    /**
+     * Creates one task per rowsPerTask output rows; each evaluates the whole fused chain for its rows.
+     */
+    public List<Runnable> createFusedTasks(FusedKernel kernel, SharedMatrix resultMatrix, int rowsPerTask) {
+        int rows = kernel.rows();
+        List<Runnable> tasks = new java.util.ArrayList<>();
+
+        for (int i = 0; i < rows; i += rowsPerTask) {
+            final int from = i;
+            final int to = Math.min(i + rowsPerTask, rows);
+
+            tasks.add(() -> {
+                for (int row = from; row < to; row++) {
+                    double[] values = new double[kernel.cols()];
+                    kernel.computeRow(row, values);
+                    resultMatrix.get(row).setValues(values);
+                }
             });
         }
 
@@ -129,16 +395,19 @@ public class LinearAlgebraEngine {
     }
 
 
-    public List<Runnable> createNegateTasks() {
+    public List<Runnable> createNegateTasks(SharedMatrix leftMatrix, int rowsPerTask) {
         int rows = leftMatrix.length();
         List<Runnable> tasks = new java.util.ArrayList<>();
 
-        for (int i=0; i < rows; i++) {
-            final int row = i;
+        for (int i=0; i < rows; i += rowsPerTask) {
+            final int from = i;
+            final int to = Math.min(i + rowsPerTask, rows);
 
             tasks.add(() -> {
-                SharedVector vec = leftMatrix.get(row);
-                vec.negate();  
+                for (int row = from; row < to; row++) {
+                    SharedVector vec = leftMatrix.get(row);
+                    vec.negate();
+                }
             });
         }
 
@@ -146,38 +415,106 @@ public class LinearAlgebraEngine {
     }
 
 
-    public List<Runnable> createTransposeTasks() {
+    public List<Runnable> createTransposeTasks(SharedMatrix leftMatrix, int rowsPerTask) {
         int rows = leftMatrix.length();
         List<Runnable> tasks = new java.util.ArrayList<>();
 
-        for (int i = 0; i<rows; i++){
-            final int row = i;
+        for (int i = 0; i<rows; i += rowsPerTask){
+            final int from = i;
+            final int to = Math.min(i + rowsPerTask, rows);
 
             tasks.add(() -> {
-                SharedVector vec = leftMatrix.get(row);
-                vec.transpose();
+                for (int row = from; row < to; row++) {
+                    SharedVector vec = leftMatrix.get(row);
+                    vec.transpose();
+                }
             });
         }
         return tasks;
     }
 
 
+    /**
+     * Returns how often each TreeOptimizer rule fired on the tree of the most recent run.
+     */
+    public Map<TreeOptimizer.Rule, Integer> getLastRewrites() {
+        return lastRewrites;
+    }
+
+    /**
+     * Returns how many duplicate subexpressions the most recent run merged into shared nodes.
+     */
+    public int getLastMergedNodes() {
+        return lastMergedNodes;
+    }
+
+    /**
+     * Returns the task granularity chosen for every operation of the most recent run.
+     */
+    public List<Granularity> getLastGranularity() {
+        return List.copyOf(lastGranularity);
+    }
+
+    /**
+     * Turns per-node tracing on or off for the following runs. While it is on, every task
+     * is timed, and each run leaves an ExecutionTrace behind (see getLastTrace()).
+     */
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    /**
+     * Returns the trace of the most recent run that completed with tracing on, or null.
+     */
+    public ExecutionTrace getLastTrace() {
+        return lastTrace;
+    }
+
+    /**
+     * How an operation's rows were split into tasks. workPerTask is the estimated number of
+     * element operations in a full task; below MIN_TASK_WORK only when the operation is
+     * too small to give every worker a task of that size.
+     */
+    public static class Granularity {
+        public final ComputationNodeType type;
+        public final int rows;
+        public final int rowsPerTask;
+        public final int tasks;
+        public final long workPerTask;
+
+        public Granularity(ComputationNodeType type, int rows, int rowsPerTask, long workPerTask) {
+            this.type = type;
+            this.rows = rows;
+            this.rowsPerTask = rowsPerTask;
+            this.tasks = (rows + rowsPerTask - 1) / rowsPerTask;
+            this.workPerTask = workPerTask;
+        }
+    }
+
     public String getWorkerReport() {
         String report = "Worker Report:\n";
 
-        double[][] l = leftMatrix.readRowMajor();
-        int lCollums = 0;
-        if (l.length > 0) {
-            lCollums = l[0].length;
+        for (Map.Entry<TreeOptimizer.Rule, Integer> rewrite : lastRewrites.entrySet()) {
+            report += String.format("Rewrite %s applied %d time(s)%n", rewrite.getKey(), rewrite.getValue());
+        }
+        if (lastMergedNodes > 0) {
+            report += String.format("Merged %d duplicate subexpression(s)%n", lastMergedNodes);
         }
-        report += String.format("Left matrix: %d x %d%n", l.length, lCollums);
 
-        double[][] r = rightMatrix.readRowMajor();
-        int rCols = 0;
-        if (r.length > 0) {
-            rCols = r[0].length;
+        for (Operation op : lastWave) {
+            if (op.fusedOperators > 0) {
+                report += String.format("FUSED %s chain of %d operators: result %d x %d%n", op.type,
+                        op.fusedOperators, op.leftShape[0], op.leftShape[1]);
+                continue;
+            }
+            report += String.format("%s: left matrix %d x %d, right matrix %d x %d%n", op.type,
+                    op.leftShape[0], op.leftShape[1], op.rightShape[0], op.rightShape[1]);
+        }
+        for (Granularity granularity : lastGranularity) {
+            report += String.format("%s: %d rows in %d task(s) of %d rows, ~%d element operations each%n",
+                    granularity.type, granularity.rows, granularity.tasks, granularity.rowsPerTask,
+                    granularity.workPerTask);
         }
-        report += String.format("Right matrix: %d x %d%n", r.length, rCols);
 
         if (executor == null) {
             report += "No executor available\n";
@@ -193,6 +530,84 @@ public class LinearAlgebraEngine {
 
 
     //HELPER FUNCTIONS
+
+    private void commit(ComputeEvent event, Operation op, int waveSize) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operator = op.fusedOperators > 0 ? "FUSED " + op.type : op.type.name();
+            event.rows = op.result.rows();
+            event.cols = op.result.cols();
+            event.tasks = op.tasks.size();
+            event.waveSize = waveSize;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the trace of a prepared operation: its operator, operand shapes, estimated
+     * floating point operations and the traced nodes it consumes.
+     */
+    private NodeTrace trace(Operation op, long copyNanos) {
+        List<int[]> operandShapes = new ArrayList<>();
+        if (op.fusedOperators > 0) {
+            for (ComputationNode input : op.inputs) {
+                operandShapes.add(new int[]{input.getRows(), input.getCols()});
+            }
+        } else {
+            operandShapes.add(op.leftShape);
+            for (SharedMatrix right : op.rights) {
+                operandShapes.add(new int[]{right.rows(), right.cols()});
+            }
+        }
+
+        int[] resultShape = {op.result.rows(), op.result.cols()};
+        long elements = (long) resultShape[0] * resultShape[1];
+        long flops;
+        if (op.fusedOperators > 0) {
+            flops = elements * op.fusedOperators;
+        } else if (op.type == ComputationNodeType.MULTIPLY) {
+            flops = 2 * elements * op.leftShape[1];
+        } else if (op.type == ComputationNodeType.ADD) {
+            flops = elements * op.rights.size();
+        } else if (op.type == ComputationNodeType.NEGATE) {
+            flops = elements;
+        } else {
+            flops = 0; // a transpose only moves data
+        }
+
+        List<Integer> children = new ArrayList<>();
+        for (ComputationNode input : op.inputs) {
+            NodeTrace child = traced.get(input);
+            if (child != null && !children.contains(child.id)) {
+                children.add(child.id);
+            }
+        }
+
+        String operator = op.fusedOperators > 0 ? "FUSED " + op.type : op.type.name();
+        NodeTrace trace = new NodeTrace(traceNodes.size(), traceWaves, operator, operandShapes, resultShape,
+                flops, children);
+        trace.copyNanos = copyNanos;
+        traceNodes.add(trace);
+        traced.put(op.node, trace);
+        return trace;
+    }
+
+    /**
+     * Chooses how many consecutive rows one task of op covers: enough that a task carries
+     * MIN_TASK_WORK, but no more than gives each worker TASKS_PER_WORKER tasks, rounded
+     * up to a multiple of multipleOf. The choice is recorded in lastGranularity.
+     */
+    private int chooseRowsPerTask(Operation op, int rows, long workPerRow, int multipleOf) {
+        long workers = executor.getWorkerCount();
+        long byWork = (MIN_TASK_WORK + workPerRow - 1) / Math.max(1, workPerRow);
+        long byBalance = (rows + TASKS_PER_WORKER * workers - 1) / (TASKS_PER_WORKER * workers);
+        long block = Math.max(1, Math.min(byWork, byBalance));
+        block = (block + multipleOf - 1) / multipleOf * multipleOf;
+        int rowsPerTask = (int) Math.min(block, Math.max(1, rows));
+
+        lastGranularity.add(new Granularity(op.type, rows, rowsPerTask, rowsPerTask * workPerRow));
+        return rowsPerTask;
+    }
     private void validateTaskDimensions(ComputationNode node) {
         ComputationNodeType type = node.getNodeType();
         List<ComputationNode> children = node.getChildren();
@@ -200,11 +615,13 @@ public class LinearAlgebraEngine {
         //ADD
         if (type == ComputationNodeType.ADD) {
             for (int i=1; i<children.size(); i++) {
-                double[][] a = children.get(0).getMatrix();
-                double[][] b = children.get(i).getMatrix();
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(i);
 
-                if (a.length != b.length ||
-                    (a.length > 0 && a[0].length != b[0].length)) {
+                int[] aShape = a.inferShape();
+                int[] bShape = b.inferShape();
+                if (aShape[0] != bShape[0] ||
+                    (aShape[0] > 0 && aShape[1] != bShape[1])) {
                     throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
                 }
             }
@@ -212,10 +629,10 @@ public class LinearAlgebraEngine {
 
         // MULTIPLY
         if (type == ComputationNodeType.MULTIPLY) {
-            double[][] left = children.get(0).getMatrix();
-            double[][] right = children.get(1).getMatrix();
+            ComputationNode left = children.get(0);
+            ComputationNode right = children.get(1);
 
-            if (left.length > 0 && left[0].length != right.length) {
+            if (left.inferShape()[0] > 0 && left.inferShape()[1] != right.inferShape()[0]) {
                 throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
             }
         }
@@ -231,11 +648,156 @@ public class LinearAlgebraEngine {
     }
 
 
+    /**
+     * Validates every node of an element-wise chain, operands first.
+     */
+    private void validateChain(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            validateChain(child);
+        }
+        validateTaskDimensions(node);
+    }
+
+    private boolean isFusible(ComputationNode node) {
+        ComputationNodeType type = node.getNodeType();
+        return type == ComputationNodeType.ADD || type == ComputationNodeType.NEGATE
+            || type == ComputationNodeType.TRANSPOSE;
+    }
+
+    private boolean allChildrenResolved(ComputationNode node) {
+        for (ComputationNode child : node.getChildren()) {
+            if (child.getNodeType() != ComputationNodeType.MATRIX) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the nodes to compute in the next wave: every node whose operands are all
+     * resolved, except that an element-wise node is taken together with the element-wise
+     * operands below it when all of their operands are resolved. An operand that another
+     * node also reads is never fused away, since its value is needed on its own.
+     */
+    private List<ComputationNode> findReadyNodes(ComputationNode root) {
+        List<ComputationNode> ready = new ArrayList<>();
+        collectReady(root, java.util.Collections.newSetFromMap(new IdentityHashMap<>()), ready);
+        return ready;
+    }
+
+    private void collectReady(ComputationNode node, java.util.Set<ComputationNode> visited, List<ComputationNode> ready) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+            return;
+        }
+        if (isFusible(node) ? isChainReady(node) : allChildrenResolved(node)) {
+            ready.add(node);
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            collectReady(child, visited, ready);
+        }
+    }
+
+    private boolean isChainReady(ComputationNode node) {
+        for (ComputationNode child : node.getChildren()) {
+            if (child.getNodeType() == ComputationNodeType.MATRIX) {
+                continue;
+            }
+            if (!isFusible(child) || !isOnlyConsumer(child) || !isChainReady(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a matrix holding the child's value that the caller may only read:
+     * the child's own result when it has a row-major one, otherwise a new matrix.
+     */
+    private SharedMatrix borrowOperand(ComputationNode child) {
+        SharedMatrix shared = child.getSharedMatrix();
+        if (shared != null && shared.getOrientation() == VectorOrientation.ROW_MAJOR) {
+            return shared;
+        }
+        SharedMatrix operand = storage.newMatrix();
+        operand.loadRowMajor(child.getMatrix());
+        return operand;
+    }
+
+    /**
+     * Returns a matrix holding the child's value that the caller may modify. When this
+     * node is the child's last consumer its row-major result is taken over instead of copied.
+     */
+    private SharedMatrix ownOperand(ComputationNode child, boolean mayTakeOver) {
+        SharedMatrix shared = child.getSharedMatrix();
+        if (shared != null && mayTakeOver && isOnlyConsumer(child) && computed.contains(shared)
+                && shared.getOrientation() == VectorOrientation.ROW_MAJOR) {
+            computed.remove(shared);
+            return child.detachSharedMatrix();
+        }
+
+        double[][] values = child.getMatrix();
+        if (shared == null && storage == MatrixStorage.VECTORS) {
+            // VECTORS wraps the given rows, and the input tree's arrays must stay untouched
+            double[][] deepCopy = new double[values.length][];
+            for (int i = 0; i < values.length; i++) {
+                deepCopy[i] = values[i].clone();
+            }
+            values = deepCopy;
+        }
+        SharedMatrix operand = storage.newMatrix();
+        operand.loadRowMajor(values);
+        return operand;
+    }
+
+    /**
+     * True if no other pending node, in this wave or a later one, reads the child.
+     */
+    private boolean isOnlyConsumer(ComputationNode child) {
+        Integer remaining = consumers.get(child);
+        return remaining != null && remaining == 1;
+    }
+
+    private boolean isHeldByChild(SharedMatrix matrix, List<ComputationNode> children) {
+        for (ComputationNode child : children) {
+            if (child.getSharedMatrix() == matrix) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts, for every node, how many times it appears as an operand.
+     * A node shared by several parents is visited once.
+     */
+    private void countConsumers(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            boolean firstVisit = !consumers.containsKey(child);
+            consumers.merge(child, 1, Integer::sum);
+            if (firstVisit) {
+                countConsumers(child);
+            }
+        }
+    }
+
+    /**
+     * Turns every n-ary operation except ADD into binary ones; multiplication chains are
+     * ordered by cost (see ComputationNode.chainNesting). ADD is computed n-ary in one pass.
+     */
     private void recursiveAssociativeNesting(ComputationNode node) {
         if (node.getNodeType() == ComputationNodeType.MATRIX) {
             return;
         }
-        node.associativeNesting();
+        if (node.getNodeType() != ComputationNodeType.ADD) {
+            node.chainNesting();
+        }
 
         if (node.getChildren() != null) {
             for (ComputationNode child : node.getChildren()) {
@@ -245,4 +807,28 @@ public class LinearAlgebraEngine {
     }
 
 
+    /**
+     * Per-node operand state for one operation in a wave.
+     */
+    private static class Operation {
+        final ComputationNode node;
+        final ComputationNodeType type; // the node is a MATRIX once resolved
+        SharedMatrix left;
+        SharedMatrix right;
+        List<SharedMatrix> rights = List.of(); // every right operand, for n-ary ADD
+        SharedMatrix result;
+        List<Runnable> tasks;
+        int[] leftShape;
+        int[] rightShape;
+        List<ComputationNode> inputs;  // the nodes whose values this operation consumes
+        int fusedOperators = 0;        // number of operators computed together, 0 if not fused
+        NodeTrace trace;               // null unless tracing
+        ComputeEvent event;
+
+        Operation(ComputationNode node) {
+            this.node = node;
+            this.type = node.getNodeType();
+            this.inputs = node.getChildren();
+        }
+    }
 }
@@ -1,16 +1,92 @@
 package spl.lae;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
+import memory.MatrixStorage;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
 import parser.InputParser;
 import parser.OutputWriter;
+import scheduling.SchedulerMode;
+import scheduling.TiredExecutor;
 
+/**
+ * Usage: Main <numThreads> <inputPath> <outputPath> [--storage=vectors|flat|off_heap] [--scheduler=tired|tired_spin|work_stealing|virtual [--carriers=<n>]] [--compact] [--binary] [--trace]
+ *        Main <numThreads> --serve=<port> [--jobs=<n>] [--storage=vectors|flat|off_heap] [--scheduler=tired|tired_spin|work_stealing|virtual [--carriers=<n>]] [--compact]
+ *        Main <numThreads> --batch=<directory|manifest> [--storage=vectors|flat|off_heap] [--scheduler=tired|tired_spin|work_stealing|virtual [--carriers=<n>]] [--compact] [--binary]
+ * --scheduler selects how tasks reach the workers (see SchedulerMode, default tired). With
+ * virtual, <numThreads> bounds how many tasks run at once and --carriers sets how many
+ * platform threads run them (default: one per core).
+ * --compact writes the result without any whitespace.
+ * --binary writes the result in BinaryMatrixFormat (errors are still written as JSON).
+ * --trace also writes an ExecutionTrace of the run to <outputPath>.trace.json.
+ * The input may also be a single matrix in BinaryMatrixFormat.
+ * --serve starts an EngineServer on the given local port instead of running a single job;
+ * --jobs sets how many jobs it computes at the same time (default 4).
+ * --batch runs every job of a directory or manifest in this JVM (see BatchRunner).
+ */
 public class Main {
   public static void main(String[] args) throws IOException {
     int numThreads = Integer.parseInt(args[0]);
-    String inputPath = args[1];
-    String outputPath = args[2];
+    boolean serve = args[1].startsWith("--serve=");
+    boolean batch = args[1].startsWith("--batch=");
+    String inputPath = serve || batch ? null : args[1];
+    String outputPath = serve || batch ? null : args[2];
+    MatrixStorage storage = MatrixStorage.VECTORS;
+    SchedulerMode mode = SchedulerMode.TIRED;
+    boolean compact = false;
+    boolean binary = false;
+    boolean trace = false;
+    int jobs = 4;
+    for (int i = serve || batch ? 2 : 3; i < args.length; i++) {
+      if (serve && args[i].startsWith("--jobs=")) {
+        jobs = Integer.parseInt(args[i].substring("--jobs=".length()));
+      } else if (args[i].startsWith("--storage=")) {
+        storage = MatrixStorage.valueOf(args[i].substring("--storage=".length()).toUpperCase());
+      } else if (args[i].startsWith("--scheduler=")) {
+        mode = SchedulerMode.valueOf(args[i].substring("--scheduler=".length()).toUpperCase());
+      } else if (args[i].startsWith("--carriers=")) {
+        TiredExecutor.setCarrierThreads(Integer.parseInt(args[i].substring("--carriers=".length())));
+      } else if (args[i].equals("--compact")) {
+        compact = true;
+      } else if (args[i].equals("--binary")) {
+        binary = true;
+      } else if (!serve && !batch && args[i].equals("--trace")) {
+        trace = true;
+      } else {
+        throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+    if (serve) {
+      int port = Integer.parseInt(args[1].substring("--serve=".length()));
+      EngineServer server = new EngineServer(port, numThreads, jobs, storage, compact, mode);
+      server.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          server.stop();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+      System.out.println("Listening on http://127.0.0.1:" + server.getPort() + "/jobs");
+      return;
+    }
+
+    if (batch) {
+      List<BatchRunner.Job> batchJobs = BatchRunner.readJobs(Path.of(args[1].substring("--batch=".length())));
+      long start = System.nanoTime();
+      int failed;
+      try {
+        failed = new BatchRunner(numThreads, storage, compact, binary, mode).run(batchJobs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      System.out.printf("Processed %d jobs (%d failed) in %.2f s%n", batchJobs.size(), failed, (System.nanoTime() - start) / 1e9);
+      return;
+    }
+
     InputParser parser = new InputParser();
     LinearAlgebraEngine lae = null;
       try {
@@ -20,13 +96,29 @@ public class Main {
         }
         else if (root.getNodeType() == ComputationNodeType.MATRIX) {
           // if only a single matrix is provided, write it directly to output
-          OutputWriter.write(root.getMatrix(), outputPath);
+          if (binary) {
+            OutputWriter.writeBinary(root.getMatrix(), outputPath);
+          } else {
+            OutputWriter.write(root.getMatrix(), outputPath, compact);
+          }
         }
         else {
-        lae = new LinearAlgebraEngine(numThreads);
+        lae = new LinearAlgebraEngine(numThreads, storage, mode);
+        lae.setTracing(trace);
         ComputationNode resultNode = lae.run(root);       // run engine until root is MATRIX
-        double[][] result = resultNode.getMatrix();      // get final matrix
-        OutputWriter.write(result, outputPath);          // write JSON output
+        if (binary && resultNode.getSharedMatrix() != null) {
+          OutputWriter.writeBinary(resultNode.getSharedMatrix(), outputPath);
+        } else if (binary) {
+          OutputWriter.writeBinary(resultNode.getMatrix(), outputPath);
+        } else if (resultNode.getSharedMatrix() != null) {
+          OutputWriter.write(resultNode.getSharedMatrix(), outputPath, compact); // stream it out row by row
+        } else {
+          OutputWriter.write(resultNode.getMatrix(), outputPath, compact);     // write JSON output
+        }
+        resultNode.release();                            // free the (possibly off-heap) result
+        if (trace) {
+          lae.getLastTrace().write(Path.of(outputPath + ".trace.json"));
+        }
       }
     } catch (Exception e) {
         // write error JSON
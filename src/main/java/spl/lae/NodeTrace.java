@@ -0,0 +1,92 @@
+package spl.lae;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What computing one node cost, recorded by a LinearAlgebraEngine with tracing enabled.
+ * All times are in nanoseconds:
+ *   copy         preparing the operation: copying operands it works on in place, allocating
+ *                the result and building its tasks
+ *   dispatch     from handing the wave to the executor until the first task of this node started
+ *   compute      the run time of all of its tasks added up, over all workers
+ *   span         from its first task starting to its last task ending
+ *   barrierWait  from its last task ending until the whole wave was done
+ */
+public class NodeTrace {
+
+    public final int id;                     // position in dispatch order
+    public final int wave;
+    public final String operator;            // e.g. "MULTIPLY", or "FUSED ADD" for a fused chain
+    public final List<int[]> operandShapes;
+    public final int[] resultShape;
+    public final long flops;                 // estimated floating point operations
+    public final List<Integer> children;     // ids of the traced nodes whose results this one consumed
+
+    int tasks;
+    long copyNanos;
+    long dispatchNanos;
+    long barrierWaitNanos;
+    final AtomicLong computeNanos = new AtomicLong(0);
+    final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+    final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+
+    NodeTrace(int id, int wave, String operator, List<int[]> operandShapes, int[] resultShape, long flops,
+            List<Integer> children) {
+        this.id = id;
+        this.wave = wave;
+        this.operator = operator;
+        this.operandShapes = operandShapes;
+        this.resultShape = resultShape;
+        this.flops = flops;
+        this.children = children;
+    }
+
+    public int getTasks() { return tasks; }
+    public long getCopyNanos() { return copyNanos; }
+    public long getDispatchNanos() { return dispatchNanos; }
+    public long getComputeNanos() { return computeNanos.get(); }
+    public long getSpanNanos() { return tasks == 0 ? 0 : lastEnd.get() - firstStart.get(); }
+    public long getBarrierWaitNanos() { return barrierWaitNanos; }
+
+    /**
+     * The time this node itself kept its dependents waiting: copy, dispatch and span.
+     */
+    public long getOwnNanos() {
+        return copyNanos + dispatchNanos + getSpanNanos();
+    }
+
+    /**
+     * Wraps each task so that its run time is added to this node's trace.
+     */
+    List<Runnable> timed(List<Runnable> tasks) {
+        this.tasks = tasks.size();
+        List<Runnable> timedTasks = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            timedTasks.add(() -> {
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    long end = System.nanoTime();
+                    computeNanos.addAndGet(end - start);
+                    firstStart.accumulateAndGet(start, Math::min);
+                    lastEnd.accumulateAndGet(end, Math::max);
+                }
+            });
+        }
+        return timedTasks;
+    }
+
+    /**
+     * Fills in the times that are only known once the wave is done.
+     */
+    void waveDone(long submitted, long waveEnd) {
+        if (tasks == 0) {
+            return;
+        }
+        dispatchNanos = firstStart.get() - submitted;
+        barrierWaitNanos = waveEnd - lastEnd.get();
+    }
+}
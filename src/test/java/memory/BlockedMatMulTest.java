@@ -0,0 +1,40 @@
+package memory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class BlockedMatMulTest {
+
+    @Test
+    public void testMatchesNaiveMultiplyOnRaggedSizes() {
+        // sizes that are not multiples of MR, NR or KC exercise every edge path
+        int n = 7, k = 300, m = 6;
+        double[][] left = new double[n][k];
+        double[][] right = new double[k][m];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < k; j++)
+                left[i][j] = (i * 31 + j * 7) % 11 - 5;
+        for (int i = 0; i < k; i++)
+            for (int j = 0; j < m; j++)
+                right[i][j] = (i * 13 + j * 3) % 9 - 4;
+
+        double[][] result = new BlockedMatMul(right).multiply(left);
+
+        assertEquals(n, result.length);
+        for (int i = 0; i < n; i++) {
+            double[] expected = new double[m];
+            for (int j = 0; j < m; j++)
+                for (int x = 0; x < k; x++)
+                    expected[j] += left[i][x] * right[x][j];
+            assertArrayEquals(expected, result[i], 0.0001);
+        }
+    }
+
+    @Test
+    public void testDimensionMismatchThrows() {
+        BlockedMatMul kernel = new BlockedMatMul(new double[][]{{1, 2}, {3, 4}});
+        assertThrows(IllegalArgumentException.class, () -> kernel.multiply(new double[][]{{1, 2, 3}}));
+    }
+}
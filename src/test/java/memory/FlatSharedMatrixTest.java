@@ -0,0 +1,92 @@
+package memory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class FlatSharedMatrixTest {
+
+    @Test
+    public void testLoadAndReadBothOrientations() {
+        double[][] input = {
+            {1.0, 2.0, 3.0},
+            {4.0, 5.0, 6.0}
+        };
+        FlatSharedMatrix rowMajor = new FlatSharedMatrix(input);
+        FlatSharedMatrix columnMajor = new FlatSharedMatrix();
+        columnMajor.loadColumnMajor(input);
+
+        assertEquals(2, rowMajor.length());
+        assertEquals(3, columnMajor.length());
+        assertEquals(VectorOrientation.COLUMN_MAJOR, columnMajor.getOrientation());
+        for (SharedMatrix matrix : new SharedMatrix[]{rowMajor, columnMajor}) {
+            double[][] output = matrix.readRowMajor();
+            assertEquals(input.length, output.length);
+            for (int i = 0; i < input.length; i++) {
+                assertArrayEquals(input[i], output[i], 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void testViewsWriteThroughToStorage() {
+        FlatSharedMatrix matrix = new FlatSharedMatrix(new double[][]{{1, 2}, {3, 4}});
+
+        matrix.get(0).add(matrix.get(1));
+        matrix.get(1).negate();
+
+        assertArrayEquals(new double[]{4, 6}, matrix.readRowMajor()[0], 0.0001);
+        assertArrayEquals(new double[]{-3, -4}, matrix.readRowMajor()[1], 0.0001);
+        assertEquals(4.0, matrix.snapshot().get(0, 0), 0.0001);
+    }
+
+    @Test
+    public void testTransposingAllViewsTransposesMatrix() {
+        FlatSharedMatrix matrix = new FlatSharedMatrix(new double[][]{{1, 2, 3}});
+
+        matrix.get(0).transpose();
+
+        double[][] output = matrix.readRowMajor();
+        assertEquals(3, output.length);
+        assertEquals(3.0, output[2][0], 0.0001);
+    }
+
+    @Test
+    public void testOffHeapMatchesFlat() {
+        double[][] input = {{1, 2, 3}, {4, 5, 6}};
+        OffHeapSharedMatrix matrix = new OffHeapSharedMatrix(input);
+
+        matrix.get(0).add(matrix.get(1));
+        matrix.get(1).negate();
+        matrix.get(0).setValues(new double[]{7, 8, 9});
+
+        assertEquals(2, matrix.rows());
+        assertEquals(3, matrix.cols());
+        assertArrayEquals(new double[]{7, 8, 9}, matrix.readRowMajor()[0], 0.0001);
+        assertArrayEquals(new double[]{-4, -5, -6}, matrix.get(1).toArray(), 0.0001);
+        assertEquals(-6.0, matrix.snapshot().get(1, 2), 0.0001);
+    }
+
+    @Test
+    public void testReleaseEmptiesMatrix() {
+        OffHeapSharedMatrix matrix = new OffHeapSharedMatrix(new double[][]{{1, 2}, {3, 4}});
+
+        matrix.release();
+
+        assertEquals(0, matrix.length());
+        assertArrayEquals(new double[0][0], matrix.readRowMajor());
+
+        // released memory is reused by the next matrix and fully overwritten on load
+        OffHeapSharedMatrix next = new OffHeapSharedMatrix(new double[][]{{5, 6}, {7, 8}});
+        assertArrayEquals(new double[]{7, 8}, next.readRowMajor()[1], 0.0001);
+    }
+
+    @Test
+    public void testViewCannotBeResized() {
+        FlatSharedMatrix matrix = new FlatSharedMatrix(new double[][]{{1, 1, 1}});
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2}, {1, 2}, {1, 2}});
+
+        assertThrows(IllegalStateException.class, () -> matrix.get(0).vecMatMul(m));
+    }
+}
@@ -0,0 +1,55 @@
+package memory;
+
+import java.util.Random;
+
+/**
+ * Single-threaded GFLOP/s comparison between the per-row SharedVector.vecMatMul path
+ * and the packed BlockedMatMul kernel. Not a unit test; run it directly:
+ *   java -cp target/classes:target/test-classes memory.MatMulBenchmark [size ...]
+ */
+public class MatMulBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{128, 256, 512} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for (int n : sizes) {
+            double[][] left = randomMatrix(n, new Random(1));
+            double[][] right = randomMatrix(n, new Random(2));
+            double flops = 2.0 * n * n * n;
+
+            double vecMatMulSeconds = best(() -> {
+                SharedMatrix rightMatrix = new SharedMatrix(right);
+                for (double[] row : left) {
+                    new SharedVector(row.clone(), VectorOrientation.ROW_MAJOR).vecMatMul(rightMatrix);
+                }
+            });
+            double blockedSeconds = best(() -> new BlockedMatMul(right).multiply(left));
+
+            System.out.printf("n=%d  vecMatMul: %.3f GFLOP/s  blocked: %.3f GFLOP/s  speedup: %.1fx%n",
+                    n, flops / vecMatMulSeconds / 1e9, flops / blockedSeconds / 1e9, vecMatMulSeconds / blockedSeconds);
+        }
+    }
+
+    private static double best(Runnable run) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e9);
+        }
+        return best;
+    }
+
+    private static double[][] randomMatrix(int n, Random rand) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                m[i][j] = rand.nextDouble();
+            }
+        }
+        return m;
+    }
+}
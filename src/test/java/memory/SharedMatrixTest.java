@@ -86,6 +86,27 @@ public class SharedMatrixTest {
     }
 
 
+    @Test
+    public void testSnapshotIsColumnMajorAndDetached() {
+        double[][] data = {{1, 2, 3}, {4, 5, 6}};
+        SharedMatrix rowMajor = new SharedMatrix(data);
+        SharedMatrix columnMajor = new SharedMatrix();
+        columnMajor.loadColumnMajor(data);
+
+        for (SharedMatrix matrix : new SharedMatrix[]{rowMajor, columnMajor}) {
+            MatrixSnapshot snapshot = matrix.snapshot();
+            assertEquals(2, snapshot.rows());
+            assertEquals(3, snapshot.cols());
+            assertEquals(6.0, snapshot.get(1, 2), 0.0001);
+        }
+
+        // later writes to the matrix must not leak into an existing snapshot
+        MatrixSnapshot snapshot = rowMajor.snapshot();
+        rowMajor.get(0).negate();
+        assertEquals(1.0, snapshot.get(0, 0), 0.0001);
+    }
+
+
     @Test
     public void testSingleElementMatrix() {
         double[][] data = {{42.0}};
@@ -0,0 +1,63 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import memory.FlatSharedMatrix;
+import memory.SharedMatrix;
+
+public class BinaryMatrixFormatTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRoundTripThroughMappedFile() throws Exception {
+        Path file = dir.resolve("m.bin");
+        double[][] input = {{1.5, -2, 3}, {4, 5, 6e300}};
+
+        OutputWriter.writeBinary(new FlatSharedMatrix(input), file.toString());
+
+        assertEquals(24 + 6 * 8, Files.size(file));
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, bytes.getInt(12));
+        assertEquals(3, bytes.getInt(16));
+        assertEquals(1.5, bytes.getDouble(24), 0.0);
+
+        SharedMatrix mapped = BinaryMatrixFormat.read(file);
+        assertEquals(2, mapped.rows());
+        assertEquals(3, mapped.cols());
+        assertArrayEquals(input[1], mapped.get(1).toArray(), 0.0);
+        assertEquals(-2.0, mapped.snapshot().get(0, 1), 0.0);
+    }
+
+    @Test
+    public void testInputParserMapsBinaryFiles() throws Exception {
+        Path file = dir.resolve("m.bin");
+        BinaryMatrixFormat.write(new double[][]{{7, 8}}, file);
+
+        ComputationNode node = new InputParser().parse(file.toString());
+
+        assertEquals(ComputationNodeType.MATRIX, node.getNodeType());
+        assertArrayEquals(new double[]{7, 8}, node.getMatrix()[0], 0.0);
+    }
+
+    @Test
+    public void testRejectsTruncatedFile() throws Exception {
+        Path file = dir.resolve("m.bin");
+        BinaryMatrixFormat.write(new double[][]{{7, 8}}, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+
+        assertThrows(IOException.class, () -> BinaryMatrixFormat.read(file));
+    }
+}
@@ -0,0 +1,112 @@
+package parser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class InputParserTest {
+
+    @TempDir
+    Path dir;
+
+    private ComputationNode parse(String json) throws Exception {
+        Path file = dir.resolve("input.json");
+        Files.writeString(file, json);
+        return new InputParser().parse(file.toString());
+    }
+
+    private String parseError(String json) {
+        return assertThrows(ParseException.class, () -> parse(json)).getMessage();
+    }
+
+    @Test
+    public void testParsesTreeAndSharesRepeatedMatrices() throws Exception {
+        ComputationNode root = parse("{\"operands\": [[[1, 2.5], [3, -4]], {\"operator\": \"-\", \"operands\": [[[1, 2.5], [3, -4]]]}],"
+            + " \"operator\": \"+\"}");
+
+        assertEquals(ComputationNodeType.ADD, root.getNodeType());
+        ComputationNode first = root.getChildren().get(0);
+        assertArrayEquals(new double[]{1, 2.5}, first.getMatrix()[0], 0.0001);
+        assertArrayEquals(new double[]{3, -4}, first.getMatrix()[1], 0.0001);
+        assertSame(first, root.getChildren().get(1).getChildren().get(0));
+    }
+
+    @Test
+    public void testOperandFilesAreLoadedOnlyWhenNeeded() throws Exception {
+        BinaryMatrixFormat.write(new double[][]{{1, 2}, {3, 4}}, dir.resolve("a.bin"));
+        Files.createDirectories(dir.resolve("ops"));
+        Files.writeString(dir.resolve("ops/b.json"), "[[10, 20], [30, 40]]");
+
+        ComputationNode root = parse("{\"operator\": \"+\", \"operands\": [{\"file\": \"a.bin\"}, {\"file\": \"ops/b.json\"},"
+            + " {\"file\": \"ops/../a.bin\"}]}");
+
+        ComputationNode a = root.getChildren().get(0);
+        ComputationNode b = root.getChildren().get(1);
+        assertSame(a, root.getChildren().get(2));
+        assertEquals(dir.resolve("a.bin"), a.getSource());
+
+        // the shape of a binary operand comes from its header, without loading it
+        assertEquals(2, a.getCols());
+        assertEquals(dir.resolve("a.bin"), a.getSource());
+
+        assertArrayEquals(new double[]{30, 40}, b.getMatrix()[1], 0.0001);
+        assertEquals(null, b.getSource());
+    }
+
+    @Test
+    public void testChainNestingDoesNotLoadJsonOperandFiles() throws Exception {
+        Files.writeString(dir.resolve("a.json"), "[[1, 2]]");
+        Files.writeString(dir.resolve("b.json"), "[[1], [2]]");
+        Files.writeString(dir.resolve("c.json"), "[[3]]");
+        ComputationNode root = parse("{\"operator\": \"*\", \"operands\": [{\"file\": \"a.json\"},"
+            + " {\"file\": \"b.json\"}, {\"file\": \"c.json\"}]}");
+        List<ComputationNode> operands = List.copyOf(root.getChildren());
+
+        root.chainNesting();
+
+        for (ComputationNode operand : operands) {
+            assertEquals(ComputationNodeType.MATRIX, operand.getNodeType());
+            assertTrue(operand.getSource() != null, "operand should not be loaded yet");
+        }
+    }
+
+    @Test
+    public void testMissingOperandFileFailsWhenUsed() throws Exception {
+        ComputationNode root = parse("{\"operator\": \"-\", \"operands\": [{\"file\": \"missing.json\"}]}");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> root.getChildren().get(0).getMatrix());
+        assertTrue(e.getMessage().startsWith("Failed to load operand"));
+    }
+
+    @Test
+    public void testOperandFileReferringToAnotherFileIsRejected() throws Exception {
+        Files.writeString(dir.resolve("a.json"), "{\"file\": \"b.json\"}");
+        Files.writeString(dir.resolve("b.json"), "[[1, 2]]");
+        ComputationNode root = parse("{\"operator\": \"-\", \"operands\": [{\"file\": \"a.json\"}]}");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> root.getChildren().get(0).getMatrix());
+        assertEquals("Operand file " + dir.resolve("a.json") + " refers to another file", e.getMessage());
+    }
+
+    @Test
+    public void testKeepsValidationErrors() {
+        assertEquals("Empty array cannot be parsed as DataNode.", parseError("[]"));
+        assertEquals("Vectors (1D arrays) are not supported as standalone nodes.", parseError("[1, 2]"));
+        assertEquals("Inconsistent row sizes in matrix.", parseError("[[1, 2], [3]]"));
+        assertEquals("Inconsistent row sizes in matrix.", parseError("[[1], [2, 3]]"));
+        assertEquals("Invalid matrix row: \"x\"", parseError("[\"x\"]"));
+        assertEquals("Invalid node structure: 5", parseError("5"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"operator\": \"/\", \"operands\": [[[1]]]}"));
+    }
+}
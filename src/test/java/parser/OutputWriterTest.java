@@ -0,0 +1,41 @@
+package parser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import memory.FlatSharedMatrix;
+import memory.SharedMatrix;
+
+public class OutputWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testCompactStreamingFromSharedMatrix() throws Exception {
+        Path file = dir.resolve("out.json");
+        SharedMatrix matrix = new FlatSharedMatrix(new double[][]{{1, -2.5}, {3, 4}});
+
+        OutputWriter.write(matrix, file.toString(), true);
+
+        assertEquals("{\"result\":[[1.0,-2.5],[3.0,4.0]]}", Files.readString(file));
+    }
+
+    @Test
+    public void testPrettyOutputMatchesObjectMapper() throws Exception {
+        Path file = dir.resolve("out.json");
+        double[][] matrix = {{1, 2, 3}, {4, 5, 6}};
+
+        OutputWriter.write(matrix, file.toString());
+
+        String expected = new ObjectMapper().writerWithDefaultPrettyPrinter()
+            .writeValueAsString(new OutputWriter.ResultMatrix(matrix));
+        assertEquals(expected, Files.readString(file));
+    }
+}
@@ -0,0 +1,49 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+public class SubexpressionMergerTest {
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... operands) {
+        return new ComputationNode(type, new ArrayList<>(List.of(operands)));
+    }
+
+    @Test
+    public void testIdenticalSubtreesBecomeOneNode() {
+        // (A*B) + (A'*B') where A' and B' are separate copies with the same entries
+        ComputationNode left = op(ComputationNodeType.MULTIPLY,
+            new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3}, {4}}));
+        ComputationNode right = op(ComputationNodeType.MULTIPLY,
+            new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3}, {4}}));
+        ComputationNode root = op(ComputationNodeType.ADD, left, right);
+
+        SubexpressionMerger merger = new SubexpressionMerger();
+        assertSame(root, merger.merge(root));
+
+        assertSame(root.getChildren().get(0), root.getChildren().get(1));
+        assertEquals(3, merger.getMergedCount()); // two leaves and the product
+    }
+
+    @Test
+    public void testDifferentSubtreesStaySeparate() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}});
+        ComputationNode b = new ComputationNode(new double[][]{{1, 3}});
+        ComputationNode root = op(ComputationNodeType.ADD,
+            op(ComputationNodeType.NEGATE, a), op(ComputationNodeType.TRANSPOSE, a), b);
+
+        SubexpressionMerger merger = new SubexpressionMerger();
+        merger.merge(root);
+
+        List<ComputationNode> children = root.getChildren();
+        assertNotSame(children.get(0), children.get(1));
+        assertSame(children.get(0).getChildren().get(0), children.get(1).getChildren().get(0));
+        assertSame(b, children.get(2));
+        assertEquals(0, merger.getMergedCount());
+    }
+}
@@ -0,0 +1,94 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TreeOptimizerTest {
+
+    private static ComputationNode unary(ComputationNodeType type, ComputationNode child) {
+        return new ComputationNode(type, new ArrayList<>(List.of(child)));
+    }
+
+    @Test
+    public void testDoubleNegationAndTransposeCancel() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}});
+        ComputationNode root = unary(ComputationNodeType.NEGATE, unary(ComputationNodeType.NEGATE,
+            unary(ComputationNodeType.TRANSPOSE, unary(ComputationNodeType.TRANSPOSE, a))));
+
+        TreeOptimizer optimizer = new TreeOptimizer();
+        assertSame(a, optimizer.optimize(root));
+        assertEquals(1, optimizer.getFiredRules().get(TreeOptimizer.Rule.DOUBLE_NEGATION));
+        assertEquals(1, optimizer.getFiredRules().get(TreeOptimizer.Rule.DOUBLE_TRANSPOSE));
+    }
+
+    @Test
+    public void testTransposeOfProductIsPushedDownOnlyWhenCheaper() {
+        // T(T(A) * B): pushing the transpose down gives T(B) * A, one 2x2 copy instead of 3x3
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2, 3}});
+        ComputationNode b = new ComputationNode(new double[][]{{1, 2, 3}});
+        ComputationNode cheap = unary(ComputationNodeType.TRANSPOSE, new ComputationNode(ComputationNodeType.MULTIPLY,
+            new ArrayList<>(List.of(unary(ComputationNodeType.TRANSPOSE, a), b))));
+
+        TreeOptimizer optimizer = new TreeOptimizer();
+        ComputationNode result = optimizer.optimize(cheap);
+        assertEquals(ComputationNodeType.MULTIPLY, result.getNodeType());
+        assertEquals(ComputationNodeType.TRANSPOSE, result.getChildren().get(0).getNodeType());
+        assertSame(a, result.getChildren().get(1));
+        assertEquals(1, optimizer.getFiredRules().get(TreeOptimizer.Rule.TRANSPOSE_OF_PRODUCT));
+
+        // T(A * B) with a 1x1 product: transposing it is cheaper than transposing 1x3 and 3x1
+        ComputationNode c = new ComputationNode(new double[][]{{1}, {2}, {3}});
+        ComputationNode expensive = unary(ComputationNodeType.TRANSPOSE, new ComputationNode(ComputationNodeType.MULTIPLY,
+            new ArrayList<>(List.of(b, c))));
+        assertSame(expensive, optimizer.optimize(expensive));
+        assertTrue(optimizer.getFiredRules().isEmpty());
+    }
+
+    @Test
+    public void testNegationsInSumAreFactored() {
+        ComputationNode a = new ComputationNode(new double[][]{{1}});
+        ComputationNode b = new ComputationNode(new double[][]{{2}});
+        ComputationNode c = new ComputationNode(new double[][]{{3}});
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(
+            a, unary(ComputationNodeType.NEGATE, b), unary(ComputationNodeType.NEGATE, c))));
+
+        TreeOptimizer optimizer = new TreeOptimizer();
+        ComputationNode result = optimizer.optimize(root);
+
+        // A + -(B + C)
+        assertSame(root, result);
+        assertEquals(2, result.getChildren().size());
+        ComputationNode negatedSum = result.getChildren().get(1);
+        assertEquals(ComputationNodeType.NEGATE, negatedSum.getNodeType());
+        assertEquals(List.of(b, c), negatedSum.getChildren().get(0).getChildren());
+        assertEquals(1, optimizer.getFiredRules().get(TreeOptimizer.Rule.NEGATION_FACTORING));
+    }
+
+    @Test
+    public void testMalformedUnaryOperatorsAreLeftAlone() {
+        // -(-(A), B): unwrapping the inner negation would silently drop B
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}});
+        ComputationNode b = new ComputationNode(new double[][]{{3, 4}});
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE,
+            new ArrayList<>(List.of(unary(ComputationNodeType.NEGATE, a), b)));
+
+        TreeOptimizer optimizer = new TreeOptimizer();
+        assertSame(root, optimizer.optimize(root));
+        assertEquals(2, root.getChildren().size());
+        assertTrue(optimizer.getFiredRules().isEmpty());
+
+        // T(T()) and -(-()): nothing to unwrap
+        ComputationNode emptyTranspose = unary(ComputationNodeType.TRANSPOSE,
+            new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>()));
+        ComputationNode emptyNegate = unary(ComputationNodeType.NEGATE,
+            new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>()));
+        assertSame(emptyTranspose, optimizer.optimize(emptyTranspose));
+        assertSame(emptyNegate, optimizer.optimize(emptyNegate));
+        assertTrue(optimizer.getFiredRules().isEmpty());
+    }
+}
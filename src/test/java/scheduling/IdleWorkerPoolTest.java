@@ -0,0 +1,71 @@
+package scheduling;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class IdleWorkerPoolTest {
+
+    @Test
+    public void testPollReturnsLeastTiredFirst() {
+        IdleWorkerPool pool = new IdleWorkerPool(4);
+        TiredThread[] workers = new TiredThread[4];
+        long[] used = {300, 100, 400, 200};
+        for (int i = 0; i < 4; i++) {
+            workers[i] = new TiredThread(i, 1.0);
+            workers[i].increaseTimeUsed(used[i]);
+            pool.add(workers[i]);
+        }
+
+        assertSame(workers[1], pool.poll());
+        assertSame(workers[3], pool.poll());
+        pool.add(workers[1]);
+        assertSame(workers[1], pool.poll());
+        assertSame(workers[0], pool.poll());
+        assertSame(workers[2], pool.poll());
+        assertNull(pool.poll());
+        assertTrue(pool.isEmpty());
+    }
+
+    @Test
+    public void testTakeWaitsForAWorker() throws InterruptedException {
+        IdleWorkerPool pool = new IdleWorkerPool(1);
+        TiredThread worker = new TiredThread(0, 1.0);
+        List<TiredThread> taken = new ArrayList<>();
+        Thread taker = new Thread(() -> {
+            try {
+                taken.add(pool.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        taker.start();
+        Thread.sleep(50);
+        pool.add(worker);
+        taker.join(5000);
+
+        assertSame(worker, taken.get(0));
+    }
+
+    @Test
+    public void testLeastTiredDispatchKeepsFatigueEven() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(4);
+        for (int i = 0; i < 400; i++) {
+            // one task at a time, so every worker is idle at each choice
+            executor.submitAll(List.of(() -> {
+                long end = System.nanoTime() + 100_000;
+                while (System.nanoTime() < end) { }
+            }));
+        }
+        executor.shutdown();
+
+        // about 10 ms of fatigue each; handing tasks out round-robin or always to the same
+        // worker leaves deviations of several milliseconds, least-tired-first about one task
+        assertTrue(executor.getFairnessScore() < 1e-5, "fairness score " + executor.getFairnessScore());
+    }
+}
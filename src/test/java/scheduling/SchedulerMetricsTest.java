@@ -0,0 +1,100 @@
+package scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SchedulerMetricsTest {
+
+    @Test
+    public void testCountsEveryTask() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(3);
+        SchedulerMetrics metrics = new SchedulerMetrics(executor);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tasks.add(() -> {});
+        }
+        executor.submitAll(tasks);
+        executor.submit(() -> {});
+        executor.shutdown();
+
+        long executed = 0;
+        long waited = 0;
+        for (SchedulerMetrics.WorkerSample sample : metrics.sampleWorkers()) {
+            executed += sample.tasksExecuted;
+            long[] cumulative = metrics.getQueueWaits(sample.workerId).getCumulativeCounts();
+            waited += cumulative[cumulative.length - 1];
+        }
+        assertEquals(31, executed);
+        assertEquals(31, waited);
+        assertEquals(0, metrics.getInFlightCount());
+    }
+
+    @Test
+    public void testSamplingDoesNotTouchTheAccounts() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2);
+        SchedulerMetrics metrics = new SchedulerMetrics(executor);
+        executor.submitAll(List.of(() -> {}, () -> {}));
+        executor.shutdown();
+
+        long[] booked = new long[2];
+        for (int i = 0; i < 2; i++) {
+            booked[i] = executor.getWorker(i).getTimeIdle();
+        }
+        long firstIdle = metrics.sampleWorkers().get(0).idleNanos;
+        Thread.sleep(5);
+        long secondIdle = metrics.sampleWorkers().get(0).idleNanos;
+
+        assertTrue(secondIdle >= firstIdle + 5_000_000L); // the idle stretch still counts
+        for (int i = 0; i < 2; i++) {
+            assertEquals(booked[i], executor.getWorker(i).getTimeIdle()); // but is never booked
+        }
+    }
+
+    @Test
+    public void testPrometheusText() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2);
+        SchedulerMetrics metrics = new SchedulerMetrics(executor);
+        executor.submitAll(List.of(() -> {}, () -> {}, () -> {}));
+        executor.shutdown();
+
+        String text = metrics.toPrometheusText();
+        assertTrue(text.contains("# TYPE tired_worker_busy_seconds_total counter\n"));
+        assertTrue(text.contains("# TYPE tired_task_queue_wait_seconds histogram\n"));
+        assertTrue(text.contains("tired_worker_tasks_total{worker=\"1\"} "));
+        assertTrue(text.contains("tired_task_queue_wait_seconds_bucket{worker=\"0\",le=\"+Inf\"} "));
+        assertTrue(text.contains("tired_executor_in_flight_tasks 0\n"));
+        assertTrue(text.contains("tired_executor_fairness_score "));
+        for (String line : text.split("\n")) {
+            // every sample is "name[{labels}] value"
+            assertTrue(line.startsWith("#") || line.matches("[a-z_]+(\\{[^}]*\\})? [-0-9.E]+"), line);
+        }
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);            // up to 1 us
+        histogram.record(1_000);          // still up to 1 us
+        histogram.record(50_000);         // up to 100 us
+        histogram.record(5_000_000_000L); // beyond the last bound
+        long[] cumulative = histogram.getCumulativeCounts();
+
+        assertEquals(LatencyHistogram.getBounds().length + 1, cumulative.length);
+        assertEquals(2, cumulative[0]);
+        assertEquals(2, cumulative[1]);
+        assertEquals(3, cumulative[2]);
+        assertEquals(3, cumulative[cumulative.length - 2]);
+        assertEquals(4, cumulative[cumulative.length - 1]);
+        assertEquals(5_000_051_500L, histogram.getSumNanos());
+    }
+
+    @Test
+    public void testNullExecutor() {
+        assertThrows(IllegalArgumentException.class, () -> new SchedulerMetrics(null));
+    }
+}
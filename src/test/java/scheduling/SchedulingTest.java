@@ -1,12 +1,24 @@
 package scheduling;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 public class SchedulingTest {
 
@@ -69,6 +81,26 @@ public class SchedulingTest {
         executor.shutdown();
         assertEquals(10, counter.get());
     }
+
+    @Test
+    public void testWorkersAreIdleOnceTheirBatchIsDone() throws InterruptedException {
+        for (int round = 1; round <= 50; round++) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                tasks.add(() -> { });
+            }
+            executor.submitAll(tasks);
+
+            // each worker books the end of its task before it can be handed the next one
+            long executed = 0;
+            for (int i = 0; i < executor.getWorkerCount(); i++) {
+                assertFalse(executor.getWorker(i).isBusy());
+                executed += executor.getWorker(i).getTasksExecuted();
+            }
+            assertEquals(20L * round, executed);
+        }
+        executor.shutdown();
+    }
  
 
     @Test
@@ -99,6 +131,193 @@ public class SchedulingTest {
     }
 
 
+    @Test
+    public void testWorkStealingRunsAllTasksAndChargesWorkers() throws InterruptedException {
+        TiredExecutor stealing = new TiredExecutor(4, SchedulerMode.WORK_STEALING);
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(() -> {
+                long end = System.nanoTime() + 20_000;
+                while (System.nanoTime() < end) { }
+                counter.incrementAndGet();
+            });
+        }
+        stealing.submitAll(tasks);
+        assertEquals(1000, counter.get());
+        assertEquals(0, stealing.getInFlightCount());
+
+        stealing.submit(counter::incrementAndGet);
+        stealing.shutdown();
+        assertEquals(1001, counter.get());
+        assertTrue(stealing.getWorkerReport().contains("Fairness Score"));
+    }
+
+    @Test
+    public void testSubmitAllAsyncWaitsOnlyForItsOwnBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CompletableFuture<Void> slow = executor.submitAllAsync(List.of(blocked, blocked));
+
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+        executor.submitAll(tasks); // must not wait for the blocked batch
+        assertEquals(100, counter.get());
+        assertFalse(slow.isDone());
+
+        release.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmitAllAsyncDoesNotWaitForIdleWorkers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            tasks.add(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                counter.incrementAndGet();
+            });
+        }
+        CompletableFuture<Void> batch = executor.submitAllAsync(tasks); // 12 tasks, 4 workers
+        assertEquals(12, executor.getInFlightCount());
+
+        release.countDown();
+        batch.get(5, TimeUnit.SECONDS);
+        assertEquals(12, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmitAllRethrowsTaskFailure() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int id = i;
+            tasks.add(() -> {
+                counter.incrementAndGet();
+                if (id == 3) {
+                    throw new IllegalStateException("task 3 failed");
+                }
+            });
+        }
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> executor.submitAll(tasks));
+        assertEquals("task 3 failed", e.getMessage());
+        assertEquals(10, counter.get());
+
+        // the workers survive a failed task
+        executor.submitAll(List.of(counter::incrementAndGet));
+        assertEquals(11, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testVirtualModeRunsTasksOnVirtualThreadsForTheWorkers() throws InterruptedException {
+        TiredExecutor virtual = new TiredExecutor(16, SchedulerMode.VIRTUAL);
+        AtomicInteger onVirtualThreads = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tasks.add(() -> {
+                if (Thread.currentThread().isVirtual() && TiredThread.current() != null) {
+                    onVirtualThreads.incrementAndGet();
+                }
+                long end = System.nanoTime() + 50_000;
+                while (System.nanoTime() < end) { }
+            });
+        }
+        virtual.submitAll(tasks);
+        virtual.shutdown();
+
+        assertEquals(200, onVirtualThreads.get());
+        // every worker has settled its accounts before the batch counts as done
+        long executed = 0;
+        for (int i = 0; i < virtual.getWorkerCount(); i++) {
+            assertFalse(virtual.getWorker(i).isBusy());
+            executed += virtual.getWorker(i).getTasksExecuted();
+        }
+        assertEquals(200, executed);
+        assertTrue(virtual.getWorkerReport().contains("Time Used"));
+        assertEquals(0, virtual.getInFlightCount());
+    }
+
+    @Test
+    public void testSpinHandoffRunsEveryTask() throws InterruptedException {
+        TiredExecutor spinning = new TiredExecutor(4, SchedulerMode.TIRED_SPIN);
+        AtomicInteger counter = new AtomicInteger(0);
+        for (int round = 0; round < 50; round++) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                tasks.add(counter::incrementAndGet);
+            }
+            spinning.submitAll(tasks);
+            assertEquals((round + 1) * 20, counter.get());
+        }
+        spinning.submit(counter::incrementAndGet);
+        spinning.shutdown();
+        assertEquals(1001, counter.get());
+    }
+
+    @Test
+    public void testSpinHandoffRejectsSecondTask() {
+        TiredThread worker = new TiredThread(0, 1.0, null, true); // not started, so nobody empties the mailbox
+        worker.newTask(() -> {});
+        assertThrows(IllegalStateException.class, () -> worker.newTask(() -> {}));
+    }
+
+    @Test
+    public void testFlightRecorderEvents(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("scheduling.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("scheduling.Task");
+            recording.enable("scheduling.Submit");
+            recording.start();
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> {});
+            }
+            executor.submitAll(tasks);
+            recording.stop();
+            recording.dump(file);
+        }
+        executor.shutdown();
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<RecordedEvent> taskEvents = new ArrayList<>();
+        RecordedEvent submit = null;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("scheduling.Task")) {
+                taskEvents.add(event);
+            } else if (event.getEventType().getName().equals("scheduling.Submit")) {
+                submit = event;
+            }
+        }
+        assertEquals(8, taskEvents.size());
+        for (RecordedEvent task : taskEvents) {
+            assertTrue(task.getInt("workerId") >= 0 && task.getInt("workerId") < 4);
+            assertTrue(task.getLong("queueWait") >= 0);
+            assertEquals(8, task.getInt("batchSize"));
+        }
+        assertEquals(8, submit.getInt("tasks"));
+        assertTrue(submit.getBoolean("waitsForCompletion"));
+        assertEquals("TIRED", submit.getString("scheduler"));
+    }
+
     @Test
     public void testSubmitEmptyTaskList() {
         // executor should not block or throw an error on empty list of tasks
@@ -0,0 +1,47 @@
+package spl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import memory.MatrixStorage;
+import spl.lae.BatchRunner;
+
+public class BatchRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testDirectoryBatch() throws Exception {
+        Files.writeString(dir.resolve("a.json"), "{\"operator\": \"+\", \"operands\": [[[1, 2]], [[3, 4]]]}");
+        Files.writeString(dir.resolve("b.json"), "{\"operator\": \"-\", \"operands\": [[[5]]]}");
+        Files.writeString(dir.resolve("c.json"), "{\"operator\": \"*\", \"operands\": [[[1, 2]], [[3, 4]]]}");
+
+        List<BatchRunner.Job> jobs = BatchRunner.readJobs(dir);
+        assertEquals(3, jobs.size());
+
+        int failed = new BatchRunner(2, MatrixStorage.VECTORS, true, false).run(jobs);
+        assertEquals(1, failed);
+        assertEquals("{\"result\":[[4.0,6.0]]}", Files.readString(dir.resolve("out/a.json")));
+        assertEquals("{\"result\":[[-5.0]]}", Files.readString(dir.resolve("out/b.json")));
+        assertTrue(Files.readString(dir.resolve("out/c.json")).contains("\"error\""));
+    }
+
+    @Test
+    public void testManifestBatch() throws Exception {
+        Files.writeString(dir.resolve("in.json"), "{\"operator\": \"T\", \"operands\": [[[1, 2]]]}");
+        Files.writeString(dir.resolve("jobs.txt"), "# input output\nin.json first.json\n\nin.json second.json\n");
+
+        List<BatchRunner.Job> jobs = BatchRunner.readJobs(dir.resolve("jobs.txt"));
+        assertEquals(2, jobs.size());
+        assertEquals(0, new BatchRunner(1, MatrixStorage.FLAT, true, false).run(jobs));
+        assertEquals("{\"result\":[[1.0],[2.0]]}", Files.readString(dir.resolve("first.json")));
+        assertEquals("{\"result\":[[1.0],[2.0]]}", Files.readString(dir.resolve("second.json")));
+    }
+}
@@ -0,0 +1,103 @@
+package spl;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import memory.MatrixStorage;
+import spl.lae.EngineServer;
+
+public class EngineServerTest {
+
+    private EngineServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new EngineServer(0, 4, 2, MatrixStorage.VECTORS, true);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    private HttpResponse<String> post(String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/jobs"))
+            .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testJobsReuseTheWorkerPool() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            HttpResponse<String> response = post("{\"operator\": \"*\", \"operands\": [[[1, 2]], [[" + i + "], [1]]]}");
+
+            assertEquals(200, response.statusCode());
+            assertEquals("{\"result\":[[" + (i + 2) + ".0]]}", response.body());
+        }
+    }
+
+    @Test
+    public void testFailedJobReportsErrorAndServerKeepsRunning() throws Exception {
+        HttpResponse<String> response = post("{\"operator\": \"+\", \"operands\": [[[1, 2]], [[1]]]}");
+
+        assertEquals(400, response.statusCode());
+        assertEquals("{\n  \"error\" : \"Illegal operation: dimensions mismatch\"\n}", response.body());
+        assertEquals(200, post("[[1]]").statusCode());
+    }
+
+    @Test
+    public void testJobsCannotReadOperandFiles() throws Exception {
+        HttpResponse<String> response = post("{\"operator\": \"-\", \"operands\": [{\"file\": \"/etc/passwd\"}]}");
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("Operand files are not allowed in this input"));
+    }
+
+    @Test
+    public void testMetricsEndpoint() throws Exception {
+        post("[[1]]");
+        post("{\"operator\": \"-\", \"operands\": [[[1, 2]]]}");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/metrics")).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+        assertTrue(response.body().contains("tired_worker_tasks_total{worker=\"0\"}"));
+        assertTrue(response.body().contains("tired_executor_in_flight_tasks 0\n"));
+    }
+
+    @Test
+    public void testMetricsRespondWhileEveryJobSlotIsTaken() throws Exception {
+        EngineServer oneSlot = new EngineServer(0, 2, 1, MatrixStorage.VECTORS, true);
+        oneSlot.start();
+        // a job whose body never finishes arriving keeps the only job thread waiting
+        try (Socket stalled = new Socket("127.0.0.1", oneSlot.getPort())) {
+            OutputStream out = stalled.getOutputStream();
+            out.write(("POST /jobs HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\n[[1")
+                .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            for (String path : new String[]{"/metrics", "/report"}) {
+                HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + oneSlot.getPort() + path))
+                    .timeout(Duration.ofSeconds(10)).build();
+                assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+            }
+        } finally {
+            oneSlot.stop();
+        }
+    }
+}
@@ -1,17 +1,35 @@
 package spl; 
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals; 
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import memory.MatrixStorage;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import parser.BinaryMatrixFormat;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
+import parser.TreeOptimizer;
+import scheduling.SchedulerMode;
+import scheduling.TiredExecutor;
+import spl.lae.ExecutionTrace;
 import spl.lae.LinearAlgebraEngine;
+import spl.lae.NodeTrace;
 
 
 public class LinearAlgebraEngineTest {
@@ -89,6 +107,32 @@ public class LinearAlgebraEngineTest {
             "Left child should be a nested ADD node");
     }
 
+    @Test
+    public void testChainNestingPicksCheapestOrder() {
+        // A: 10x1, B: 1x10, C: 10x1 -> A * (B * C) costs 20 multiplications, (A * B) * C costs 200
+        double[][] a = new double[10][1];
+        double[][] b = new double[1][10];
+        double[][] c = new double[10][1];
+        for (int i = 0; i < 10; i++) {
+            a[i][0] = 1;
+            b[0][i] = i;
+            c[i][0] = 2;
+        }
+        ComputationNode nodeA = new ComputationNode(a);
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY,
+            new ArrayList<>(List.of(nodeA, new ComputationNode(b), new ComputationNode(c))));
+
+        root.chainNesting();
+        assertEquals(2, root.getChildren().size());
+        assertEquals(nodeA, root.getChildren().get(0), "A should stay a direct operand");
+        assertEquals(ComputationNodeType.MULTIPLY, root.getChildren().get(1).getNodeType());
+
+        // every entry is 1 * (0+1+...+9) * 2 = 90
+        double[][] res = lae.run(root).getMatrix();
+        assertEquals(10, res.length);
+        assertEquals(90.0, res[9][0], 0.0001);
+    }
+
     @Test
     public void testDeepNestedAddition() {
         // (((1+1)+1)+1) = 4
@@ -197,6 +241,335 @@ public class LinearAlgebraEngineTest {
         assertArrayEquals(original[1], resMatrix[1], 0.0001);
     }
 
+    @Test
+    public void testAlternativeStorageMatchesDefault() {
+        // -(A * B) + T(C) on the contiguous and off-heap backends
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{1, 0}, {0, 1}, {1, 1}};
+        double[][] c = {{1, 2}, {3, 4}};
+
+        for (MatrixStorage storage : new MatrixStorage[]{MatrixStorage.FLAT, MatrixStorage.OFF_HEAP}) {
+            ComputationNode mult = new ComputationNode(ComputationNodeType.MULTIPLY,
+                List.of(new ComputationNode(a), new ComputationNode(b)));
+            ComputationNode neg = new ComputationNode(ComputationNodeType.NEGATE, List.of(mult));
+            ComputationNode trans = new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(new ComputationNode(c)));
+            ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(neg, trans));
+
+            double[][] res = new LinearAlgebraEngine(4, storage).run(root).getMatrix();
+
+            assertArrayEquals(new double[]{-3, -2}, res[0], 0.0001, storage.name());
+            assertArrayEquals(new double[]{-8, -7}, res[1], 0.0001, storage.name());
+        }
+    }
+
+    @Test
+    public void testSharedIntermediateIsReleasedOnlyAfterLastUse() {
+        // S = A + A is consumed twice: (S * S) + S
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode s = new ComputationNode(ComputationNodeType.ADD, List.of(a, a));
+        ComputationNode mult = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(s, s));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(mult, s));
+
+        double[][] res = new LinearAlgebraEngine(4, MatrixStorage.OFF_HEAP).run(root).getMatrix();
+
+        // S = [[2,4],[6,8]], S*S = [[28,40],[60,88]]
+        assertArrayEquals(new double[]{30, 44}, res[0], 0.0001);
+        assertArrayEquals(new double[]{66, 96}, res[1], 0.0001);
+    }
+
+    @Test
+    public void testIndependentSubtreesResolveInOneWave() {
+        // (A*B) + (C*D): both products are ready at once
+        ComputationNode ab = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(
+            new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3}, {4}})));
+        ComputationNode cd = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(
+            new ComputationNode(new double[][]{{5}}), new ComputationNode(new double[][]{{6}})));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(ab, cd));
+
+        lae.setTracing(true);
+        ComputationNode res = lae.run(root);
+        assertEquals(41.0, res.getMatrix()[0][0], 0.0001);
+
+        List<NodeTrace> nodes = lae.getLastTrace().getNodes();
+        assertEquals(3, nodes.size());
+        assertEquals(0, nodes.get(0).wave);
+        assertEquals(0, nodes.get(1).wave); // both products in the first wave
+        assertEquals(1, nodes.get(2).wave);
+    }
+
+    @Test
+    public void testRewrittenTreeGivesSameResult() {
+        // -(-A) + T(T(B)) is computed as A + B
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode b = new ComputationNode(new double[][]{{5, 6}, {7, 8}});
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(
+            new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(ComputationNodeType.NEGATE, List.of(a)))),
+            new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(b))))));
+
+        double[][] res = lae.run(root).getMatrix();
+
+        assertArrayEquals(new double[]{6, 8}, res[0], 0.0001);
+        assertArrayEquals(new double[]{10, 12}, res[1], 0.0001);
+        assertEquals(1, lae.getLastRewrites().get(TreeOptimizer.Rule.DOUBLE_NEGATION));
+        assertEquals(1, lae.getLastRewrites().get(TreeOptimizer.Rule.DOUBLE_TRANSPOSE));
+    }
+
+    @Test
+    public void testRepeatedSubexpressionIsComputedOnce() {
+        // (A*B) + (A*B) + (A*B) with every operand a separate copy
+        List<ComputationNode> products = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            products.add(new ComputationNode(ComputationNodeType.MULTIPLY, List.of(
+                new ComputationNode(new double[][]{{1, 2}, {3, 4}}),
+                new ComputationNode(new double[][]{{5, 6}, {7, 8}}))));
+        }
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(products));
+
+        double[][] res = lae.run(root).getMatrix();
+
+        assertArrayEquals(new double[]{57, 66}, res[0], 0.0001);
+        assertArrayEquals(new double[]{129, 150}, res[1], 0.0001);
+        // after nesting, (P + P) + P: two copies of each leaf and two copies of P merge away
+        assertEquals(6, lae.getLastMergedNodes());
+    }
+
+    @Test
+    public void testElementwiseChainIsFused() {
+        // T(-(T(A) + B)) with A: 2x3 and B: 3x2, computed as one operation
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        ComputationNode b = new ComputationNode(new double[][]{{10, 20}, {30, 40}, {50, 60}});
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, List.of(
+            new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(a)), b));
+        ComputationNode root = new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(
+            new ComputationNode(ComputationNodeType.NEGATE, List.of(sum))));
+
+        double[][] res = lae.run(root).getMatrix();
+
+        assertEquals(2, res.length);
+        assertArrayEquals(new double[]{-11, -32, -53}, res[0], 0.0001);
+        assertArrayEquals(new double[]{-24, -45, -66}, res[1], 0.0001);
+        assertTrue(lae.getWorkerReport().contains("FUSED TRANSPOSE chain of 4 operators"));
+    }
+
+    @Test
+    public void testFusedChainReportsDimensionMismatch() {
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, List.of(
+            new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{1, 2, 3}})));
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE, List.of(sum));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> lae.run(root));
+        assertEquals("Illegal operation: dimensions mismatch", e.getMessage());
+    }
+
+    @Test
+    public void testMalformedFactorInLongChainIsRejected() {
+        // A * B * -(): the chain is not reordered, the engine reports the empty negation
+        ComputationNode chain = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(
+            new ComputationNode(new double[][]{{1, 2}}),
+            new ComputationNode(new double[][]{{1}, {2}}),
+            new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>()))));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> lae.evaluate(chain));
+        assertEquals("Unary operator NEGATE needs only 1 operand", e.getMessage());
+    }
+
+    @Test
+    public void testMalformedUnaryOperatorsAreRejected() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}});
+        ComputationNode b = new ComputationNode(new double[][]{{3, 4}});
+        ComputationNode extraOperand = new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>(List.of(
+            new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>(List.of(a))), b)));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> lae.evaluate(extraOperand));
+        assertEquals("Unary operator NEGATE needs only 1 operand", e.getMessage());
+
+        ComputationNode empty = new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(
+            new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>()))));
+        e = assertThrows(IllegalArgumentException.class, () -> lae.evaluate(empty));
+        assertEquals("Unary operator TRANSPOSE needs only 1 operand", e.getMessage());
+    }
+
+    @Test
+    public void testManyOperandSumRunsInOneWave() {
+        List<ComputationNode> operands = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            operands.add(new ComputationNode(new double[][]{{i, 2 * i}, {-i, 0}}));
+        }
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, operands);
+
+        double[][] res = lae.run(root).getMatrix();
+
+        assertArrayEquals(new double[]{1275, 2550}, res[0], 0.0001);
+        assertArrayEquals(new double[]{-1275, 0}, res[1], 0.0001);
+        assertTrue(lae.getWorkerReport().startsWith("Worker Report:\nADD: left matrix 2 x 2"));
+    }
+
+    @Test
+    public void testManyOperandSumChecksEveryOperand() {
+        List<ComputationNode> operands = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            operands.add(new ComputationNode(new double[][]{{1, 2}}));
+        }
+        operands.add(new ComputationNode(new double[][]{{1, 2, 3}}));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, operands);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> lae.run(root));
+        assertEquals("Illegal operation: dimensions mismatch", e.getMessage());
+    }
+
+    @Test
+    public void testMappedOperandIsNeverModified(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("a.bin");
+        BinaryMatrixFormat.write(new double[][]{{1, 2}, {3, 4}}, file);
+        ComputationNode a = new ComputationNode(BinaryMatrixFormat.read(file));
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE, List.of(a));
+
+        double[][] res = lae.run(root).getMatrix();
+
+        assertArrayEquals(new double[]{-3, -4}, res[1], 0.0001);
+        assertArrayEquals(new double[]{3, 4}, BinaryMatrixFormat.read(file).get(1).toArray(), 0.0);
+    }
+
+    @Test
+    public void testSharedExecutorOutlivesEngines() throws Exception {
+        TiredExecutor executor = new TiredExecutor(2);
+        try {
+            for (int i = 1; i <= 2; i++) {
+                LinearAlgebraEngine engine = new LinearAlgebraEngine(executor, MatrixStorage.FLAT);
+                ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE,
+                    List.of(new ComputationNode(new double[][]{{i}})));
+
+                assertEquals(-i, engine.run(root).getMatrix()[0][0], 0.0001);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkStealingSchedulerGivesSameResult() {
+        double[][] a = new double[40][30];
+        double[][] b = new double[30][20];
+        for (int i = 0; i < 40; i++) for (int j = 0; j < 30; j++) a[i][j] = i - j;
+        for (int i = 0; i < 30; i++) for (int j = 0; j < 20; j++) b[i][j] = i * j % 7;
+
+        ComputationNode tired = new ComputationNode(ComputationNodeType.MULTIPLY,
+            List.of(new ComputationNode(a), new ComputationNode(b)));
+        ComputationNode stealing = new ComputationNode(ComputationNodeType.MULTIPLY,
+            List.of(new ComputationNode(a), new ComputationNode(b)));
+
+        double[][] expected = lae.run(tired).getMatrix();
+        double[][] actual = new LinearAlgebraEngine(4, MatrixStorage.VECTORS, SchedulerMode.WORK_STEALING)
+            .run(stealing).getMatrix();
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testTasksCoverRowBlocks() {
+        double[][] tall = new double[100_000][4];
+        for (int i = 0; i < tall.length; i++) tall[i][0] = i;
+        ComputationNode negate = new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(tall)));
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(4);
+
+        double[][] result = engine.run(negate).getMatrix();
+        assertEquals(-99_999.0, result[99_999][0], 0.0001);
+
+        LinearAlgebraEngine.Granularity granularity = engine.getLastGranularity().get(0);
+        assertEquals(100_000, granularity.rows);
+        assertEquals(4096, granularity.rowsPerTask); // MIN_TASK_WORK / 4 columns
+        assertEquals(25, granularity.tasks);
+        assertTrue(granularity.workPerTask >= LinearAlgebraEngine.MIN_TASK_WORK);
+    }
+
+    @Test
+    public void testSmallOperationIsOneTask() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}, {3, 4}, {5, 6}});
+        ComputationNode b = new ComputationNode(new double[][]{{1, 0}, {0, 1}});
+        lae.run(new ComputationNode(ComputationNodeType.MULTIPLY, List.of(a, b)));
+
+        LinearAlgebraEngine.Granularity granularity = lae.getLastGranularity().get(0);
+        assertEquals(ComputationNodeType.MULTIPLY, granularity.type);
+        assertEquals(1, granularity.tasks);
+    }
+
+    @Test
+    public void testTraceRecordsNodesAndCriticalPath() {
+        ComputationNode ab = new ComputationNode(ComputationNodeType.MULTIPLY,
+            List.of(new ComputationNode(new double[3][2]), new ComputationNode(new double[2][4])));
+        ComputationNode cd = new ComputationNode(ComputationNodeType.MULTIPLY,
+            List.of(new ComputationNode(new double[3][5]), new ComputationNode(new double[5][4])));
+        lae.setTracing(true);
+        lae.run(new ComputationNode(ComputationNodeType.ADD, List.of(ab, cd)));
+
+        ExecutionTrace trace = lae.getLastTrace();
+        List<NodeTrace> nodes = trace.getNodes();
+        assertEquals(3, nodes.size());
+        assertEquals("MULTIPLY", nodes.get(0).operator);
+        assertEquals(48, nodes.get(0).flops);   // 2 * 3 * 2 * 4
+        assertEquals(120, nodes.get(1).flops);  // 2 * 3 * 5 * 4
+        assertArrayEquals(new int[]{5, 4}, nodes.get(1).operandShapes.get(1));
+        assertEquals(nodes.get(0).wave, nodes.get(1).wave);
+
+        NodeTrace sum = nodes.get(2);
+        assertEquals("ADD", sum.operator);
+        assertEquals(12, sum.flops);
+        assertEquals(List.of(0, 1), sum.children);
+        assertArrayEquals(new int[]{3, 4}, sum.resultShape);
+        assertTrue(sum.getComputeNanos() > 0);
+
+        List<NodeTrace> path = trace.getCriticalPath();
+        assertEquals(2, path.size());
+        assertEquals(sum, path.get(1));
+        assertEquals(path.get(0).getOwnNanos() + sum.getOwnNanos(), trace.getCriticalPathNanos());
+        assertTrue(trace.getCriticalPathNanos() <= trace.getTotalNanos());
+    }
+
+    @Test
+    public void testTraceIsWrittenAsJson(@TempDir Path dir) throws Exception {
+        ComputationNode chain = new ComputationNode(ComputationNodeType.NEGATE,
+            List.of(new ComputationNode(ComputationNodeType.ADD,
+                List.of(new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3, 4}})))));
+        lae.setTracing(true);
+        lae.run(chain);
+        Path file = dir.resolve("out.json.trace.json");
+        lae.getLastTrace().write(file);
+
+        JsonNode json = new ObjectMapper().readTree(file.toFile());
+        assertEquals(1, json.get("nodes").size());
+        assertEquals("FUSED NEGATE", json.get("nodes").get(0).get("operator").asText());
+        assertEquals(4, json.get("nodes").get(0).get("flops").asLong()); // 2 elements, 2 operators
+        assertEquals(0, json.get("criticalPath").get(0).asInt());
+    }
+
+    @Test
+    public void testNoTraceUnlessEnabled() {
+        lae.run(new ComputationNode(ComputationNodeType.NEGATE, List.of(new ComputationNode(new double[][]{{1}}))));
+        assertEquals(null, lae.getLastTrace());
+    }
+
+    @Test
+    public void testComputeFlightRecorderEvents(@TempDir Path dir) throws Exception {
+        ComputationNode ab = new ComputationNode(ComputationNodeType.MULTIPLY,
+            List.of(new ComputationNode(new double[3][2]), new ComputationNode(new double[2][4])));
+        Path file = dir.resolve("engine.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("spl.lae.Compute");
+            recording.start();
+            lae.run(new ComputationNode(ComputationNodeType.NEGATE, List.of(ab)));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<String> operators = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().equals("spl.lae.Compute")) {
+                operators.add(event.getString("operator"));
+                assertEquals(3, event.getInt("rows"));
+                assertEquals(4, event.getInt("cols"));
+            }
+        }
+        assertEquals(List.of("MULTIPLY", "NEGATE"), operators);
+    }
+
     @Test
     public void testMixedNegativeArithmetic() {
         // expected: -2 + (-5) = -7
@@ -0,0 +1,90 @@
+package spl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import memory.MatrixStorage;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.SchedulerMode;
+import scheduling.TiredExecutor;
+import spl.lae.LinearAlgebraEngine;
+
+/**
+ * Compares the scheduler modes on a shared executor, the way EngineServer uses it:
+ *   many small jobs  - a few hundred 16 x 16 expressions evaluated by 64 concurrent callers
+ *   few large jobs   - two 512 x 512 products evaluated at the same time
+ * Not a unit test; run it directly:
+ *   java -cp target/classes:target/test-classes:<jackson jars> spl.SchedulerBenchmark [threads [carriers]]
+ * The virtual mode gets 8 times as many workers as the others, since they are only accounts there.
+ */
+public class SchedulerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int carriers = args.length > 1 ? Integer.parseInt(args[1]) : threads;
+        TiredExecutor.setCarrierThreads(carriers);
+
+        for (SchedulerMode mode : SchedulerMode.values()) {
+            int workers = mode == SchedulerMode.VIRTUAL ? threads * 8 : threads;
+            double small = best(mode, workers, 64, 400, 16);
+            double large = best(mode, workers, 2, 2, 512);
+            System.out.printf("%-13s workers=%-4d many small jobs: %8.1f jobs/s   few large jobs: %6.2f jobs/s%n",
+                    mode, workers, 400 / small, 2 / large);
+        }
+    }
+
+    private static double best(SchedulerMode mode, int workers, int callers, int jobs, int n) throws Exception {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            best = Math.min(best, run(mode, workers, callers, jobs, n));
+        }
+        return best;
+    }
+
+    /**
+     * Evaluates jobs expressions (A * B) + -A' of n x n matrices from callers threads at once.
+     */
+    private static double run(SchedulerMode mode, int workers, int callers, int jobs, int n) throws Exception {
+        TiredExecutor executor = new TiredExecutor(workers, mode);
+        ExecutorService callerThreads = Executors.newFixedThreadPool(callers);
+        Random rand = new Random(1);
+        double[][] a = randomMatrix(n, rand);
+        double[][] b = randomMatrix(n, rand);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> done = new ArrayList<>();
+            for (int j = 0; j < jobs; j++) {
+                done.add(callerThreads.submit(() -> {
+                    ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY,
+                        List.of(new ComputationNode(a), new ComputationNode(b)));
+                    ComputationNode negated = new ComputationNode(ComputationNodeType.NEGATE,
+                        List.of(new ComputationNode(ComputationNodeType.TRANSPOSE, List.of(new ComputationNode(a)))));
+                    ComputationNode root = new ComputationNode(ComputationNodeType.ADD, List.of(product, negated));
+                    new LinearAlgebraEngine(executor, MatrixStorage.FLAT).evaluate(root).release();
+                }));
+            }
+            for (Future<?> job : done) {
+                job.get();
+            }
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            callerThreads.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    private static double[][] randomMatrix(int n, Random rand) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                m[i][j] = rand.nextDouble();
+            }
+        }
+        return m;
+    }
+}